@@ -0,0 +1,183 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AccountStatement.java
+ *
+ * Per-account statement (successful transfers in and out, newest first), paged with keyset
+ * pagination: a page continues from the (initiated_at, txn_id) of the row at the edge of the
+ * previous one instead of skipping N rows with OFFSET, so page 1000 costs the same as page 1.
+ *
+ * Each side of the statement is a separate index seek -- on (from_account, initiated_at) and
+ * (to_account, initiated_at), see SchemaMigrations -- merged with UNION ALL.
+ *
+ * Cursors are opaque tokens bound to the account; page(..., cursor) with a page's
+ * olderCursor goes further back in time, with its newerCursor goes forward.
+ */
+public final class AccountStatement {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // One statement line; amount is negative for money leaving the account
+    public static final class Line {
+        public final long txnId;
+        public final long txnRef;
+        public final Timestamp initiatedAt;
+        public final String counterparty;
+        public final Money amount;
+        public final String remarks;
+
+        Line(long txnId, long txnRef, Timestamp initiatedAt, String counterparty, Money amount, String remarks) {
+            this.txnId = txnId;
+            this.txnRef = txnRef;
+            this.initiatedAt = initiatedAt;
+            this.counterparty = counterparty;
+            this.amount = amount;
+            this.remarks = remarks;
+        }
+
+        @Override
+        public String toString() {
+            return initiatedAt + " " + (amount.isPositive() ? "from " : "to ") + counterparty + " " + amount + " (txn " + txnId + ")";
+        }
+    }
+
+    public static final class Page {
+        public final List<Line> lines;
+        public final String olderCursor; // null when this page holds the oldest line
+        public final String newerCursor; // null when this page holds the newest line
+
+        Page(List<Line> lines, String olderCursor, String newerCursor) {
+            this.lines = lines;
+            this.olderCursor = olderCursor;
+            this.newerCursor = newerCursor;
+        }
+    }
+
+    // The leading initiated_at range is implied by the OR but lets H2 seek the
+    // (account, initiated_at) index to the cursor; the OR alone is not sargable and would
+    // scan the index from the newest row, as costly as OFFSET.
+    private static final String OLDER_THAN = " AND initiated_at <= ? AND (initiated_at < ? OR (initiated_at = ? AND txn_id < ?))";
+    private static final String NEWER_THAN = " AND initiated_at >= ? AND (initiated_at > ? OR (initiated_at = ? AND txn_id > ?))";
+    private static final String DESC = " ORDER BY initiated_at DESC, txn_id DESC";
+    private static final String ASC = " ORDER BY initiated_at ASC, txn_id ASC";
+
+    private static final String FIRST_PAGE_SQL = statementSql("", DESC);
+    private static final String OLDER_PAGE_SQL = statementSql(OLDER_THAN, DESC);
+    private static final String NEWER_PAGE_SQL = statementSql(NEWER_THAN, ASC);
+
+    private AccountStatement() {}
+
+    // Debits and credits of the account, each side seeked and limited on its own index, then merged
+    private static String statementSql(String seek, String order) {
+        return "SELECT * FROM (" +
+                "(SELECT txn_id, txn_ref, initiated_at, to_account AS counterparty, -amount AS amount, remarks" +
+                " FROM transactions WHERE from_account = ? AND status = 'SUCCESS'" + seek + order + " LIMIT ?)" +
+                " UNION ALL " +
+                "(SELECT txn_id, txn_ref, initiated_at, from_account AS counterparty, amount, remarks" +
+                " FROM transactions WHERE to_account = ? AND status = 'SUCCESS'" + seek + order + " LIMIT ?)" +
+                ") t" + order + " LIMIT ?";
+    }
+
+    // Newest page when cursor is null, else the page the cursor points to
+    public static Page page(Connection conn, String accountNumber, String cursor, int pageSize) throws SQLException {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) throw new IllegalArgumentException("page size must be 1.." + MAX_PAGE_SIZE);
+        Cursor c = cursor == null ? null : Cursor.decode(cursor, accountNumber);
+        boolean newer = c != null && c.newer;
+        String sql = c == null ? FIRST_PAGE_SQL : newer ? NEWER_PAGE_SQL : OLDER_PAGE_SQL;
+
+        List<Line> lines = new ArrayList<>(pageSize + 1);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, accountNumber, c, pageSize + 1); // one extra row tells whether there is more
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long ref = rs.getLong("txn_ref"); // 0 for rows written before txn_ref existed
+                    lines.add(new Line(rs.getLong("txn_id"), ref, rs.getTimestamp("initiated_at"),
+                            rs.getString("counterparty"), Money.fromBigDecimal(rs.getBigDecimal("amount")), rs.getString("remarks")));
+                }
+            }
+        }
+
+        boolean more = lines.size() > pageSize; // beyond this page in the direction we moved
+        if (more) lines.remove(lines.size() - 1);
+        if (newer) Collections.reverse(lines);
+        if (lines.isEmpty()) return new Page(lines, null, null);
+
+        Line newest = lines.get(0);
+        Line oldest = lines.get(lines.size() - 1);
+        boolean hasOlder = newer ? true : more;
+        boolean hasNewer = newer ? more : c != null;
+        return new Page(Collections.unmodifiableList(lines),
+                hasOlder ? new Cursor(false, oldest.initiatedAt, oldest.txnId).encode(accountNumber) : null,
+                hasNewer ? new Cursor(true, newest.initiatedAt, newest.txnId).encode(accountNumber) : null);
+    }
+
+    // H2's plan for the page older than (initiatedAt, txnId); shows which index ranges are used
+    static String explainOlderPage(Connection conn, String accountNumber, Timestamp initiatedAt, long txnId, int pageSize)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + OLDER_PAGE_SQL)) {
+            bind(ps, accountNumber, new Cursor(false, initiatedAt, txnId), pageSize + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, String accountNumber, Cursor c, int limit) throws SQLException {
+        int i = 1;
+        for (int side = 0; side < 2; side++) {
+            ps.setString(i++, accountNumber);
+            if (c != null) {
+                ps.setTimestamp(i++, c.initiatedAt);
+                ps.setTimestamp(i++, c.initiatedAt);
+                ps.setTimestamp(i++, c.initiatedAt);
+                ps.setLong(i++, c.txnId);
+            }
+            ps.setInt(i++, limit);
+        }
+        ps.setInt(i, limit);
+    }
+
+    // Position in a statement plus the direction to move from it
+    private static final class Cursor {
+        final boolean newer;
+        final Timestamp initiatedAt;
+        final long txnId;
+
+        Cursor(boolean newer, Timestamp initiatedAt, long txnId) {
+            this.newer = newer;
+            this.initiatedAt = initiatedAt;
+            this.txnId = txnId;
+        }
+
+        // "N|account|millis|nanos|txnId", base64url
+        String encode(String accountNumber) {
+            String raw = (newer ? "N" : "O") + "|" + accountNumber + "|" + initiatedAt.getTime() + "|"
+                    + initiatedAt.getNanos() + "|" + txnId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String token, String accountNumber) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                String[] f = raw.split("\\|");
+                if (f.length != 5 || !(f[0].equals("N") || f[0].equals("O")) || !f[1].equals(accountNumber)) {
+                    throw new IllegalArgumentException("invalid cursor");
+                }
+                Timestamp ts = new Timestamp(Long.parseLong(f[2]));
+                ts.setNanos(Integer.parseInt(f[3]));
+                return new Cursor(f[0].equals("N"), ts, Long.parseLong(f[4]));
+            } catch (IllegalArgumentException ex) { // also NumberFormatException and bad base64
+                throw new IllegalArgumentException("invalid cursor", ex);
+            }
+        }
+    }
+}
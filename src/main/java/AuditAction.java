@@ -0,0 +1,20 @@
+/**
+ * AuditAction.java
+ *
+ * What an audit event records; stored by name in audit_logs.action. Append new actions at
+ * the end: AuditJournal stores the ordinal.
+ */
+public enum AuditAction {
+
+    // actor created a user; account_ref unused
+    CREATE_USER,
+
+    // actor opened account_ref with amount as the initial balance
+    CREATE_ACCOUNT,
+
+    // actor moved amount from account_ref to counterparty_ref
+    TRANSFER,
+
+    // account_ref was given credit stripes (see HotAccounts)
+    ENABLE_HOT_ACCOUNT
+}
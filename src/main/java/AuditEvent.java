@@ -0,0 +1,80 @@
+import java.sql.Timestamp;
+
+/**
+ * AuditEvent.java
+ *
+ * One audit record as handed to AuditLogger. What happened is carried in typed fields --
+ * actor, action, the account it concerns, the other account and the amount -- which are
+ * stored in indexed columns of their own, so the hot path builds no strings. `meta` is
+ * optional free text for details that have no column (e.g. a new user's email).
+ *
+ * The timestamp is taken when the event is created, so rows written later by a background
+ * writer keep the time of the action.
+ */
+public class AuditEvent {
+
+    final Long userId;            // actor, null for system actions
+    final AuditAction action;
+    final String accountRef;      // account the event concerns, may be null
+    final String counterpartyRef; // other account of a transfer, may be null
+    final Money amount;           // may be null
+    final String meta;            // may be null
+    final Timestamp createdAt;
+
+    public AuditEvent(Long userId, AuditAction action, String accountRef, String counterpartyRef, Money amount, String meta) {
+        this(userId, action, accountRef, counterpartyRef, amount, meta, new Timestamp(System.currentTimeMillis()));
+    }
+
+    AuditEvent(Long userId, AuditAction action, String accountRef, String counterpartyRef, Money amount, String meta,
+               Timestamp createdAt) {
+        this.userId = userId;
+        this.action = action;
+        this.accountRef = accountRef;
+        this.counterpartyRef = counterpartyRef;
+        this.amount = amount;
+        this.meta = meta;
+        this.createdAt = createdAt;
+    }
+
+    public static AuditEvent transfer(long initiatedBy, String fromAccount, String toAccount, Money amount) {
+        return new AuditEvent(initiatedBy, AuditAction.TRANSFER, fromAccount, toAccount, amount, null);
+    }
+
+    public Long userId() {
+        return userId;
+    }
+
+    public AuditAction action() {
+        return action;
+    }
+
+    public String accountRef() {
+        return accountRef;
+    }
+
+    public String counterpartyRef() {
+        return counterpartyRef;
+    }
+
+    public Money amount() {
+        return amount;
+    }
+
+    public String meta() {
+        return meta;
+    }
+
+    public Timestamp createdAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append(createdAt).append(" user=").append(userId).append(' ').append(action);
+        if (accountRef != null) sb.append(" account=").append(accountRef);
+        if (counterpartyRef != null) sb.append(" counterparty=").append(counterpartyRef);
+        if (amount != null) sb.append(" amount=").append(amount);
+        if (meta != null) sb.append(' ').append(meta);
+        return sb.toString();
+    }
+}
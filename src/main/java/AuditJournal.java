@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AuditJournal.java
+ *
+ * Append-only, tamper-evident audit journal (backend of AuditLogger.Mode.JOURNAL). Events
+ * are binary-encoded straight into memory-mapped segment files; every record carries
+ * SHA-256(previous record's hash || record body), so changing, removing or reordering any
+ * record breaks the chain from that point on. verify() re-walks the chain sequentially.
+ *
+ * Layout of a segment file audit-<first seq, 16 digits>.seg:
+ *
+ *   header: int magic | int format version | long first seq | 32 bytes hash chained from
+ *           (last hash of the previous segment, zeros for the first one) | padding to 64
+ *   record: int body length | body | 32 bytes hash
+ *   body:   long seq | long created_at millis | byte has user | long user_id |
+ *           byte AuditAction ordinal | byte has amount | long amount in minor units |
+ *           short account_ref length | account_ref UTF-8 | short counterparty_ref length |
+ *           counterparty_ref UTF-8 | int meta length | meta UTF-8
+ *           (null strings are stored with length 0)
+ *
+ * Segments are created at their full size (zero-filled), so a zero length marks the end of
+ * the data. A new segment is started when the next record does not fit.
+ *
+ * Version 1 segments (body: long seq | long created_at millis | byte has user | long user_id
+ * | short action length | action UTF-8 | int meta length | meta UTF-8) are still verified;
+ * opening a journal whose last segment is version 1 continues the chain in a new version 2
+ * segment instead of appending v2 records to it.
+ *
+ * A record's length is written after its body and hash. Appended records live in the page
+ * cache and survive a crash of the JVM; force() (or close()) makes them survive a crash of
+ * the machine. On open, the tail of the last segment is re-verified. Leftovers of a record
+ * whose length was never published (a torn write) are zeroed before appending resumes; a
+ * published record that fails its length, sequence or hash check is evidence of damage or
+ * tampering, so the journal refuses to open rather than overwrite it.
+ */
+public class AuditJournal implements AutoCloseable {
+
+    static final int MAGIC = 0x41554a31; // "AUJ1"
+    static final int FORMAT_VERSION = 2; // 2: typed fields (AuditAction, account refs, amount)
+    static final int HEADER_BYTES = 64;
+    static final int HASH_BYTES = 32;
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int FIXED_BODY_BYTES = 8 + 8 + 1 + 8 + 1 + 1 + 8 + 2 + 2 + 4;
+    private static final int V1_FIXED_BODY_BYTES = 8 + 8 + 1 + 8 + 2 + 4;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final MessageDigest sha256 = newSha256();
+    private final byte[] lastHash = new byte[HASH_BYTES];
+    private long lastSeq;
+    private MappedByteBuffer segment;
+    private int segments;
+
+    // Result of a sequential chain walk
+    public static final class Verification {
+        public final boolean ok;
+        public final int segments;
+        public final long records;
+        public final long lastSeq;
+        public final String error; // null when ok
+
+        Verification(boolean ok, int segments, long records, long lastSeq, String error) {
+            this.ok = ok;
+            this.segments = segments;
+            this.records = records;
+            this.lastSeq = lastSeq;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return (ok ? "OK" : "BROKEN: " + error) + " (" + records + " records in " + segments + " segments, last seq " + lastSeq + ")";
+        }
+    }
+
+    // End state of one segment scan
+    private static final class Scan {
+        int end = HEADER_BYTES; // offset after the last intact record
+        long records;
+        String error;
+    }
+
+    public AuditJournal(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    // Opens (or creates) the journal in dir and resumes after its last intact record
+    public AuditJournal(Path dir, long segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_BYTES + 4096 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment size must be 4 KB + header .. 2 GB");
+        }
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+
+        List<Path> files = segmentFiles(dir);
+        segments = files.size();
+        if (files.isEmpty()) {
+            startSegment(1);
+            return;
+        }
+        // earlier segments are sealed; only the chain state at the end of the last one matters
+        Path tail = files.get(files.size() - 1);
+        try (FileChannel ch = FileChannel.open(tail, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+        }
+        if (segment.getInt(0) != MAGIC) throw new IOException("not an audit journal segment: " + tail);
+        int version = segment.getInt(4);
+        if (minBodyBytes(version) < 0) throw new IOException("unsupported audit journal format " + version + ": " + tail);
+        long firstSeq = segment.getLong(8);
+        segment.position(16);
+        segment.get(lastHash);
+        Scan scan = scan(segment, sha256, lastHash, firstSeq, minBodyBytes(version));
+        lastSeq = firstSeq - 1 + scan.records;
+        if (scan.error != null) {
+            throw new IOException("audit journal " + tail.getFileName() + " is damaged at offset " + scan.end
+                    + " after seq " + lastSeq + " (" + scan.error + "); refusing to append (see verify())");
+        }
+        // bytes of a torn write (body written, length never published) would otherwise be
+        // read as records once appends reach them
+        for (int i = scan.end; i < segment.capacity(); i++) {
+            if (segment.get(i) != 0) segment.put(i, (byte) 0);
+        }
+        segment.position(scan.end);
+        if (version != FORMAT_VERSION) { // never mix formats in a segment
+            if (scan.records == 0) segment.putInt(4, FORMAT_VERSION);
+            else startSegment(lastSeq + 1);
+        }
+    }
+
+    // Append one event; returns its sequence number
+    public synchronized long append(AuditEvent e) throws IOException {
+        byte[] account = utf8(e.accountRef);
+        byte[] counterparty = utf8(e.counterpartyRef);
+        byte[] meta = utf8(e.meta);
+        if (account.length > Short.MAX_VALUE || counterparty.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("account reference too long");
+        }
+        int bodyLength = FIXED_BODY_BYTES + account.length + counterparty.length + meta.length;
+        int recordLength = 4 + bodyLength + HASH_BYTES;
+        if (HEADER_BYTES + recordLength > segmentBytes) throw new IllegalArgumentException("audit event larger than a segment");
+        if (segment.remaining() < recordLength) startSegment(lastSeq + 1);
+
+        long seq = lastSeq + 1;
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putLong(seq);
+        segment.putLong(e.createdAt.getTime());
+        segment.put((byte) (e.userId == null ? 0 : 1));
+        segment.putLong(e.userId == null ? 0 : e.userId);
+        segment.put((byte) e.action.ordinal());
+        segment.put((byte) (e.amount == null ? 0 : 1));
+        segment.putLong(e.amount == null ? 0 : e.amount.minor());
+        segment.putShort((short) account.length);
+        segment.put(account);
+        segment.putShort((short) counterparty.length);
+        segment.put(counterparty);
+        segment.putInt(meta.length);
+        segment.put(meta);
+
+        chain(sha256, lastHash, segment, start + 4, bodyLength, lastHash);
+        segment.put(lastHash);
+        segment.putInt(start, bodyLength); // publish: the record is complete
+        lastSeq = seq;
+        return seq;
+    }
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    public synchronized int segmentCount() {
+        return segments;
+    }
+
+    // Flush the current segment to disk
+    public synchronized void force() {
+        segment.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+    }
+
+    // Seal the current segment (if any) and start a new one continuing the chain
+    private void startSegment(long firstSeq) throws IOException {
+        if (segment != null) segment.force();
+        Path file = dir.resolve(String.format("audit-%016d.seg", firstSeq));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.putInt(MAGIC);
+        segment.putInt(FORMAT_VERSION);
+        segment.putLong(firstSeq);
+        segment.put(lastHash);
+        segment.position(HEADER_BYTES);
+        segments++;
+    }
+
+    // Walk every segment in dir in order, checking headers, sequence numbers and the hash chain
+    public static Verification verify(Path dir) throws IOException {
+        MessageDigest sha256 = newSha256();
+        byte[] hash = new byte[HASH_BYTES];
+        byte[] headerHash = new byte[HASH_BYTES];
+        long nextSeq = 1;
+        long records = 0;
+        List<Path> files = segmentFiles(dir);
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            MappedByteBuffer seg;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                seg = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            String name = file.getFileName().toString();
+            if (seg.capacity() < HEADER_BYTES || seg.getInt(0) != MAGIC || minBodyBytes(seg.getInt(4)) < 0) {
+                return new Verification(false, i, records, nextSeq - 1, name + ": bad header");
+            }
+            if (seg.getLong(8) != nextSeq) {
+                return new Verification(false, i, records, nextSeq - 1, name + ": starts at seq " + seg.getLong(8) + ", expected " + nextSeq);
+            }
+            seg.position(16);
+            seg.get(headerHash);
+            if (!Arrays.equals(headerHash, hash)) {
+                return new Verification(false, i, records, nextSeq - 1, name + ": does not continue the previous segment's chain");
+            }
+            Scan scan = scan(seg, sha256, hash, nextSeq, minBodyBytes(seg.getInt(4)));
+            records += scan.records;
+            nextSeq += scan.records;
+            if (scan.error != null) {
+                return new Verification(false, i + 1, records, nextSeq - 1, name + " at offset " + scan.end + ": " + scan.error);
+            }
+        }
+        return new Verification(true, files.size(), records, nextSeq - 1, null);
+    }
+
+    // Smallest record body of a segment format version, -1 for unknown versions
+    private static int minBodyBytes(int version) {
+        if (version == 1) return V1_FIXED_BODY_BYTES;
+        if (version == FORMAT_VERSION) return FIXED_BODY_BYTES;
+        return -1;
+    }
+
+    // Check records from HEADER_BYTES until the zero end marker; `hash` holds the chain value
+    // before the first record and is advanced past every intact one. The chain and sequence
+    // checks do not depend on the body layout, only the minimum body length does.
+    private static Scan scan(ByteBuffer seg, MessageDigest sha256, byte[] hash, long firstSeq, int minBodyBytes) {
+        Scan s = new Scan();
+        byte[] stored = new byte[HASH_BYTES];
+        byte[] computed = new byte[HASH_BYTES];
+        int pos = HEADER_BYTES;
+        while (pos + 4 <= seg.capacity()) {
+            int bodyLength = seg.getInt(pos);
+            if (bodyLength == 0) return s; // end of data
+            if (bodyLength < minBodyBytes || (long) pos + 4 + bodyLength + HASH_BYTES > seg.capacity()) {
+                s.error = "invalid record length " + bodyLength;
+                return s;
+            }
+            long seq = seg.getLong(pos + 4);
+            if (seq != firstSeq + s.records) {
+                s.error = "seq " + seq + ", expected " + (firstSeq + s.records);
+                return s;
+            }
+            chain(sha256, hash, seg, pos + 4, bodyLength, computed);
+            seg.position(pos + 4 + bodyLength);
+            seg.get(stored);
+            if (!Arrays.equals(stored, computed)) {
+                s.error = "hash mismatch at seq " + seq;
+                return s;
+            }
+            System.arraycopy(computed, 0, hash, 0, HASH_BYTES);
+            s.records++;
+            pos += 4 + bodyLength + HASH_BYTES;
+            s.end = pos;
+        }
+        return s;
+    }
+
+    // out = SHA-256(prev || buf[offset, offset + length)); out may be prev
+    private static void chain(MessageDigest sha256, byte[] prev, ByteBuffer buf, int offset, int length, byte[] out) {
+        ByteBuffer body = buf.duplicate();
+        body.limit(offset + length);
+        body.position(offset);
+        sha256.update(prev);
+        sha256.update(body);
+        try {
+            sha256.digest(out, 0, HASH_BYTES);
+        } catch (java.security.DigestException ex) {
+            throw new IllegalStateException(ex); // out always has room for 32 bytes
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? EMPTY : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> segmentFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return files;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "audit-*.seg")) {
+            for (Path p : ds) files.add(p);
+        }
+        Collections.sort(files); // fixed-width sequence numbers sort by name
+        return files;
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // every JRE ships SHA-256
+        }
+    }
+}
@@ -0,0 +1,396 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AuditLogger.java
+ *
+ * Where audit events go, by durability mode:
+ *  - SYNC:   INSERT into audit_logs inside the caller's transaction (the original behavior)
+ *  - OUTBOX: INSERT into audit_outbox (no secondary indexes) inside the caller's transaction;
+ *            a relay thread moves committed rows to audit_logs in batches. Events commit
+ *            or roll back with the transaction that produced them.
+ *  - ASYNC:  nothing is written in the transaction. Events are held per connection until
+ *            afterCommit(), then go into a bounded lock-free queue that a writer thread
+ *            drains into audit_logs with JDBC batches. Events still queued when the JVM
+ *            dies are lost.
+ *  - JOURNAL: like ASYNC until commit, then appended synchronously to a hash-chained,
+ *            memory-mapped AuditJournal instead of audit_logs (no database writes at all).
+ *
+ * Code that commits or rolls back a transaction in which log() may have been called must
+ * call afterCommit(conn) / afterRollback(conn) (no-ops in SYNC and OUTBOX). Events logged
+ * in auto-commit mode are published immediately. Publishing never throws: the change is
+ * already committed, so an event that cannot be queued (logger closed) or appended is
+ * reported and counted in failed() instead.
+ *
+ * When the ASYNC queue is full, producers wait for the writer (backpressure, counted in
+ * fullWaits) rather than dropping events.
+ *
+ * Metrics: queue depth (ASYNC: queued + being written; OUTBOX: rows waiting in
+ * audit_outbox), peak depth, events written, batches, average/max flush latency.
+ */
+public class AuditLogger implements AutoCloseable {
+
+    public enum Mode { SYNC, OUTBOX, ASYNC, JOURNAL }
+
+    private static final String COLUMNS = "user_id, action, account_ref, counterparty_ref, amount, meta, created_at";
+    private static final String INSERT_AUDIT = "INSERT INTO audit_logs (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_OUTBOX = "INSERT INTO audit_outbox (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RELAY_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long RETRY_DELAY_MS = 100;
+
+    private final Mode mode;
+    private final int capacity;
+    private final int maxBatch;
+    private final Connection writerConn; // null in SYNC and JOURNAL mode
+    private final Thread writer;
+    private final AuditJournal journal; // JOURNAL mode only
+    private volatile boolean running = true;
+
+    // ASYNC
+    private final ConcurrentLinkedQueue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Map<Connection, List<AuditEvent>> uncommitted = new ConcurrentHashMap<>();
+
+    // metrics
+    private final AtomicLong peakDepth = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private final AtomicLong fullWaits = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile int outboxBacklog;
+
+    // Logger that writes in the caller's transaction, no background thread
+    public static AuditLogger sync() {
+        try {
+            return new AuditLogger(Mode.SYNC, null, null, null, 0, 0);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex); // SYNC opens no connection
+        }
+    }
+
+    // url/user/pass: connection for the writer/relay thread (unused in SYNC mode)
+    public AuditLogger(Mode mode, String url, String user, String pass, int capacity, int maxBatch) throws SQLException {
+        this.mode = mode;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.journal = null;
+        if (mode == Mode.SYNC) {
+            writerConn = null;
+            writer = null;
+            return;
+        }
+        if (mode == Mode.JOURNAL) throw new IllegalArgumentException("use AuditLogger(AuditJournal)");
+        writerConn = DriverManager.getConnection(url, user, pass);
+        writer = new Thread(mode == Mode.ASYNC ? this::writeLoop : this::relayLoop, "audit-" + mode.name().toLowerCase());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // JOURNAL mode: committed events are appended to `journal`, which close() closes
+    public AuditLogger(AuditJournal journal) {
+        this.mode = Mode.JOURNAL;
+        this.capacity = 0;
+        this.maxBatch = 0;
+        this.writerConn = null;
+        this.writer = null;
+        this.journal = journal;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public void log(Connection conn, AuditEvent event) throws SQLException {
+        logAll(conn, Collections.singletonList(event));
+    }
+
+    // Several events of one transaction; SYNC/OUTBOX write them with one JDBC batch
+    public void logAll(Connection conn, List<AuditEvent> events) throws SQLException {
+        if (events.isEmpty()) return;
+        switch (mode) {
+            case SYNC:
+                insert(conn, INSERT_AUDIT, events);
+                break;
+            case OUTBOX:
+                insert(conn, INSERT_OUTBOX, events);
+                break;
+            default:
+                if (conn.getAutoCommit()) {
+                    for (AuditEvent e : events) publish(e);
+                } else {
+                    uncommitted.computeIfAbsent(conn, c -> new ArrayList<>()).addAll(events);
+                }
+        }
+    }
+
+    // The caller's transaction on conn committed: publish its held events
+    public void afterCommit(Connection conn) {
+        List<AuditEvent> events = uncommitted.remove(conn);
+        if (events != null) {
+            for (AuditEvent e : events) publish(e);
+        }
+    }
+
+    // The caller's transaction on conn rolled back: forget its held events
+    public void afterRollback(Connection conn) {
+        uncommitted.remove(conn);
+    }
+
+    private static void insert(Connection conn, String sql, List<AuditEvent> events) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (AuditEvent e : events) {
+                if (e.userId == null) ps.setNull(1, Types.BIGINT);
+                else ps.setLong(1, e.userId);
+                ps.setString(2, e.action.name());
+                ps.setString(3, e.accountRef);
+                ps.setString(4, e.counterpartyRef);
+                ps.setBigDecimal(5, e.amount == null ? null : e.amount.toBigDecimal());
+                ps.setString(6, e.meta);
+                ps.setTimestamp(7, e.createdAt);
+                if (events.size() == 1) ps.executeUpdate();
+                else ps.addBatch();
+            }
+            if (events.size() > 1) ps.executeBatch();
+        }
+    }
+
+    // Hand a committed event to the writer queue, or the journal. The transaction has
+    // committed already, so nothing may be thrown from here: a lost event is counted and
+    // reported instead.
+    private void publish(AuditEvent e) {
+        if (mode != Mode.JOURNAL) {
+            if (!enqueue(e)) {
+                failed.incrementAndGet();
+                System.err.println("Audit event lost, logger closed: " + e);
+            }
+            return;
+        }
+        long t0 = System.nanoTime();
+        try {
+            journal.append(e);
+            recordFlush(1, System.nanoTime() - t0);
+        } catch (java.io.IOException | RuntimeException ex) {
+            failed.incrementAndGet();
+            ex.printStackTrace();
+        }
+    }
+
+    // Reserve a slot (waiting while the queue is full), then queue the event; false if the
+    // logger has been closed
+    private boolean enqueue(AuditEvent e) {
+        boolean waited = false;
+        while (true) {
+            if (!running) return false;
+            int d = depth.get();
+            if (d < capacity) {
+                if (depth.compareAndSet(d, d + 1)) {
+                    peakDepth.accumulateAndGet(d + 1, Math::max);
+                    break;
+                }
+            } else {
+                if (!waited) fullWaits.incrementAndGet();
+                waited = true;
+                LockSupport.parkNanos(50_000);
+            }
+        }
+        queue.add(e);
+        return true;
+    }
+
+    // ASYNC writer: drain up to maxBatch events per JDBC batch; a failed batch is retried
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(maxBatch);
+        while (running || depth.get() > 0) {
+            AuditEvent e;
+            while (batch.size() < maxBatch && (e = queue.poll()) != null) batch.add(e);
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (flush(batch)) {
+                depth.addAndGet(-batch.size());
+                batch.clear();
+            } else if (!running) {
+                System.err.println("Audit logger closing: dropped " + depth.get() + " unwritten events");
+                return;
+            } else {
+                sleep(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private boolean flush(List<AuditEvent> batch) {
+        long t0 = System.nanoTime();
+        try {
+            writerConn.setAutoCommit(false);
+            insert(writerConn, INSERT_AUDIT, batch);
+            writerConn.commit();
+            recordFlush(batch.size(), System.nanoTime() - t0);
+            return true;
+        } catch (SQLException ex) {
+            rollbackQuietly();
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    // OUTBOX relay: move committed outbox rows to audit_logs, oldest first
+    private void relayLoop() {
+        while (true) {
+            int moved;
+            try {
+                moved = relay();
+            } catch (SQLException ex) {
+                rollbackQuietly();
+                ex.printStackTrace();
+                if (!running) return;
+                sleep(RETRY_DELAY_MS);
+                continue;
+            }
+            if (moved == 0 && !running) return; // outbox drained
+            if (moved < maxBatch) LockSupport.parkNanos(RELAY_INTERVAL_NANOS);
+        }
+    }
+
+    private int relay() throws SQLException {
+        long t0 = System.nanoTime();
+        writerConn.setAutoCommit(false);
+        List<AuditEvent> events = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement ps = writerConn.prepareStatement(
+                "SELECT id, " + COLUMNS + " FROM audit_outbox ORDER BY id LIMIT ?")) {
+            ps.setInt(1, maxBatch);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                    long userId = rs.getLong(2);
+                    Long actor = rs.wasNull() ? null : userId;
+                    java.math.BigDecimal amount = rs.getBigDecimal(6);
+                    events.add(new AuditEvent(actor, AuditAction.valueOf(rs.getString(3)), rs.getString(4), rs.getString(5),
+                            amount == null ? null : Money.fromBigDecimal(amount), rs.getString(7), rs.getTimestamp(8)));
+                }
+            }
+        }
+        if (!events.isEmpty()) {
+            insert(writerConn, INSERT_AUDIT, events);
+            // delete exactly what was copied: rows with lower ids may still be uncommitted
+            try (PreparedStatement ps = writerConn.prepareStatement("DELETE FROM audit_outbox WHERE id = ?")) {
+                for (Long id : ids) {
+                    ps.setLong(1, id);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        writerConn.commit();
+        if (!events.isEmpty()) recordFlush(events.size(), System.nanoTime() - t0);
+        try (Statement st = writerConn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM audit_outbox")) {
+            rs.next();
+            outboxBacklog = rs.getInt(1);
+        }
+        writerConn.commit();
+        peakDepth.accumulateAndGet(outboxBacklog + events.size(), Math::max);
+        return events.size();
+    }
+
+    private void recordFlush(int events, long nanos) {
+        written.addAndGet(events);
+        batches.incrementAndGet();
+        flushNanos.addAndGet(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void rollbackQuietly() {
+        try {
+            writerConn.rollback();
+        } catch (SQLException ignore) {}
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int queueDepth() {
+        return mode == Mode.OUTBOX ? outboxBacklog : depth.get();
+    }
+
+    public long peakQueueDepth() {
+        return peakDepth.get();
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    public long fullWaits() {
+        return fullWaits.get();
+    }
+
+    // Committed events that were lost: JOURNAL append errors, or ASYNC events published
+    // after close()
+    public long failed() {
+        return failed.get();
+    }
+
+    public double averageBatchSize() {
+        long b = batches.get();
+        return b == 0 ? 0 : (double) written.get() / b;
+    }
+
+    public double averageFlushMicros() {
+        long b = batches.get();
+        return b == 0 ? 0 : flushNanos.get() / 1000.0 / b;
+    }
+
+    public double maxFlushMicros() {
+        return maxFlushNanos.get() / 1000.0;
+    }
+
+    public String stats() {
+        return String.format("mode=%s depth=%d peakDepth=%d written=%d batches=%d avgBatch=%.1f avgFlush=%.1fus maxFlush=%.0fus fullWaits=%d failed=%d",
+                mode, queueDepth(), peakQueueDepth(), written(), batches(), averageBatchSize(),
+                averageFlushMicros(), maxFlushMicros(), fullWaits(), failed());
+    }
+
+    // Write everything still queued (ASYNC) or in the outbox (OUTBOX), then stop
+    @Override
+    public void close() {
+        if (journal != null) journal.close();
+        if (writer == null) return;
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writerConn.close();
+        } catch (SQLException ignore) {}
+    }
+}
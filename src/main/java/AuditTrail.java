@@ -0,0 +1,81 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AuditTrail.java
+ *
+ * Reads audit_logs by its typed columns, newest first. Every query is an index range scan
+ * (see SchemaMigrations, version 8): events touching an account are the union of the seeks
+ * on (account_ref, created_at) and (counterparty_ref, created_at), events of an actor a
+ * seek on (user_id, created_at) -- no LIKE over meta.
+ *
+ * Events still queued in an ASYNC AuditLogger (or written to an AuditJournal) are not seen.
+ */
+public final class AuditTrail {
+
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String COLUMNS = "id, user_id, action, account_ref, counterparty_ref, amount, meta, created_at";
+
+    private static final String FOR_ACCOUNT_SQL = "SELECT * FROM (" +
+            "(SELECT " + COLUMNS + " FROM audit_logs WHERE account_ref = ? AND created_at >= ? ORDER BY created_at DESC LIMIT ?)" +
+            " UNION ALL " +
+            "(SELECT " + COLUMNS + " FROM audit_logs WHERE counterparty_ref = ? AND created_at >= ? ORDER BY created_at DESC LIMIT ?)" +
+            ") t ORDER BY created_at DESC, id DESC LIMIT ?";
+
+    private static final String FOR_USER_SQL = "SELECT " + COLUMNS + " FROM audit_logs" +
+            " WHERE user_id = ? AND created_at >= ? ORDER BY created_at DESC, id DESC LIMIT ?";
+
+    private AuditTrail() {}
+
+    // Events where the account is either account_ref or counterparty_ref, created at or after `since`
+    public static List<AuditEvent> forAccount(Connection conn, String accountNumber, Timestamp since, int limit) throws SQLException {
+        checkLimit(limit);
+        try (PreparedStatement ps = conn.prepareStatement(FOR_ACCOUNT_SQL)) {
+            int i = 1;
+            for (int side = 0; side < 2; side++) {
+                ps.setString(i++, accountNumber);
+                ps.setTimestamp(i++, since);
+                ps.setInt(i++, limit);
+            }
+            ps.setInt(i, limit);
+            return read(ps);
+        }
+    }
+
+    // Events performed by the user, created at or after `since`
+    public static List<AuditEvent> forUser(Connection conn, long userId, Timestamp since, int limit) throws SQLException {
+        checkLimit(limit);
+        try (PreparedStatement ps = conn.prepareStatement(FOR_USER_SQL)) {
+            ps.setLong(1, userId);
+            ps.setTimestamp(2, since);
+            ps.setInt(3, limit);
+            return read(ps);
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit must be 1.." + MAX_LIMIT);
+    }
+
+    private static List<AuditEvent> read(PreparedStatement ps) throws SQLException {
+        List<AuditEvent> events = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                long userId = rs.getLong("user_id");
+                Long actor = rs.wasNull() ? null : userId;
+                BigDecimal amount = rs.getBigDecimal("amount");
+                events.add(new AuditEvent(actor, AuditAction.valueOf(rs.getString("action")), rs.getString("account_ref"),
+                        rs.getString("counterparty_ref"), amount == null ? null : Money.fromBigDecimal(amount),
+                        rs.getString("meta"), rs.getTimestamp("created_at")));
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,309 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BalanceCache.java
+ *
+ * Read-through cache for the account overview and single-account lookups: a bounded LRU of
+ * accounts (number, owner, type, status, balance incl. credit stripes) plus, per user, the
+ * list of their account numbers. Entries are filled on a miss and invalidated by the code
+ * that commits a change -- BankApp.transfer()/transferBatch(), GroupCommitCoordinator and
+ * createAccount() call invalidate*() right after their commit, before returning. A caller
+ * therefore always reads its own committed writes.
+ *
+ * A fill races with invalidations: every key hashes to a stripe whose generation is bumped
+ * by invalidate*(), and a value read from H2 is only stored if its stripe's generation
+ * did not move since before the read. Otherwise a reader that fetched the old balance
+ * could overwrite the invalidation of a concurrent commit.
+ *
+ * Writers that bypass these hooks (BalanceEngine's write-behind, other JVMs on the same
+ * database) are only picked up when an entry expires, after maxAgeMillis. Hits record the
+ * age of the entry they served (staleness metrics).
+ */
+public class BalanceCache {
+
+    // One account as shown in the overview
+    public static final class AccountView {
+        public final String accountNumber;
+        public final long userId;
+        public final String type;
+        public final String status;
+        public final Timestamp createdAt;
+        public final Money balance;
+        final long loadedNanos;
+
+        AccountView(String accountNumber, long userId, String type, String status, Timestamp createdAt, Money balance,
+                    long loadedNanos) {
+            this.accountNumber = accountNumber;
+            this.userId = userId;
+            this.type = type;
+            this.status = status;
+            this.createdAt = createdAt;
+            this.balance = balance;
+            this.loadedNanos = loadedNanos;
+        }
+    }
+
+    private static final int STRIPES = 1024;
+
+    private final int maxEntries;
+    private final long maxAgeNanos;
+    private final LinkedHashMap<String, AccountView> accounts = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, List<String>> userAccounts = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] accountGenerations = new long[STRIPES];
+    private final long[] userGenerations = new long[STRIPES];
+
+    // metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hitAgeNanos = new AtomicLong();
+    private final AtomicLong maxHitAgeNanos = new AtomicLong();
+
+    // maxEntries bounds both the account and the per-user map; 0 disables caching
+    public BalanceCache(int maxEntries, long maxAgeMillis) {
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
+    // Accounts of a user, by account number
+    public List<AccountView> overview(Connection conn, long userId) throws SQLException {
+        List<AccountView> cached = cachedOverview(userId);
+        return cached != null ? cached : loadOverview(conn, userId);
+    }
+
+    // Same; borrows a connection only on a miss
+    public List<AccountView> overview(ConnectionPool pool, long userId) throws SQLException {
+        List<AccountView> cached = cachedOverview(userId);
+        if (cached != null) return cached;
+        try (Connection conn = pool.getConnection()) {
+            return loadOverview(conn, userId);
+        }
+    }
+
+    // One account, null if it does not exist
+    public AccountView account(Connection conn, String accountNumber) throws SQLException {
+        AccountView cached = cachedAccount(accountNumber);
+        return cached != null ? cached : loadAccount(conn, accountNumber);
+    }
+
+    // Same; borrows a connection only on a miss
+    public AccountView account(ConnectionPool pool, String accountNumber) throws SQLException {
+        AccountView cached = cachedAccount(accountNumber);
+        if (cached != null) return cached;
+        try (Connection conn = pool.getConnection()) {
+            return loadAccount(conn, accountNumber);
+        }
+    }
+
+    // Call after committing a change to these accounts' balance or status
+    public void invalidateAccounts(String... accountNumbers) {
+        synchronized (this) {
+            for (String an : accountNumbers) {
+                accountGenerations[stripe(an.hashCode())]++;
+                accounts.remove(an);
+            }
+        }
+        invalidations.addAndGet(accountNumbers.length);
+    }
+
+    // Call after committing a new account (or any change to which accounts a user owns)
+    public void invalidateUser(long userId) {
+        synchronized (this) {
+            userGenerations[stripe(Long.hashCode(userId))]++;
+            userAccounts.remove(userId);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            accountGenerations[i]++;
+            userGenerations[i]++;
+        }
+        accounts.clear();
+        userAccounts.clear();
+    }
+
+    // Every account of the user must be cached and fresh for a hit
+    private List<AccountView> cachedOverview(long userId) {
+        List<AccountView> views;
+        long now = System.nanoTime();
+        long oldest = now;
+        synchronized (this) {
+            List<String> numbers = userAccounts.get(userId);
+            views = numbers == null ? null : new ArrayList<>(numbers.size());
+            for (int i = 0; views != null && i < numbers.size(); i++) {
+                AccountView v = fresh(numbers.get(i), now);
+                if (v == null) views = null;
+                else {
+                    views.add(v);
+                    oldest = Math.min(oldest, v.loadedNanos);
+                }
+            }
+        }
+        if (views == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        recordHit(now - oldest);
+        return Collections.unmodifiableList(views);
+    }
+
+    private AccountView cachedAccount(String accountNumber) {
+        long now = System.nanoTime();
+        AccountView v;
+        synchronized (this) {
+            v = fresh(accountNumber, now);
+        }
+        if (v == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        recordHit(now - v.loadedNanos);
+        return v;
+    }
+
+    // Caller holds the lock
+    private AccountView fresh(String accountNumber, long now) {
+        AccountView v = accounts.get(accountNumber);
+        if (v != null && now - v.loadedNanos > maxAgeNanos) {
+            accounts.remove(accountNumber);
+            return null;
+        }
+        return v;
+    }
+
+    private List<AccountView> loadOverview(Connection conn, long userId) throws SQLException {
+        long userGeneration;
+        long[] generations = new long[STRIPES];
+        synchronized (this) {
+            userGeneration = userGenerations[stripe(Long.hashCode(userId))];
+            System.arraycopy(accountGenerations, 0, generations, 0, STRIPES);
+        }
+        List<AccountView> views = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(BankApp.ACCOUNT_OVERVIEW_SQL)) {
+            ps.setLong(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                long loaded = System.nanoTime();
+                while (rs.next()) views.add(read(rs, loaded));
+            }
+        }
+        if (maxEntries == 0) return Collections.unmodifiableList(views);
+        synchronized (this) {
+            List<String> numbers = new ArrayList<>(views.size());
+            boolean complete = true;
+            for (AccountView v : views) {
+                numbers.add(v.accountNumber);
+                int s = stripe(v.accountNumber.hashCode());
+                if (accountGenerations[s] == generations[s]) accounts.put(v.accountNumber, v);
+                else complete = false;
+            }
+            if (complete && userGenerations[stripe(Long.hashCode(userId))] == userGeneration) {
+                userAccounts.put(userId, numbers);
+            }
+            trim();
+        }
+        return Collections.unmodifiableList(views);
+    }
+
+    private AccountView loadAccount(Connection conn, String accountNumber) throws SQLException {
+        int s = stripe(accountNumber.hashCode());
+        long generation;
+        synchronized (this) {
+            generation = accountGenerations[s];
+        }
+        AccountView v = null;
+        try (PreparedStatement ps = conn.prepareStatement(BankApp.ACCOUNT_LOOKUP_SQL)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) v = read(rs, System.nanoTime());
+            }
+        }
+        if (v == null || maxEntries == 0) return v;
+        synchronized (this) {
+            if (accountGenerations[s] == generation) accounts.put(accountNumber, v);
+            trim();
+        }
+        return v;
+    }
+
+    private static AccountView read(ResultSet rs, long loadedNanos) throws SQLException {
+        return new AccountView(rs.getString("account_number"), rs.getLong("user_id"), rs.getString("type"),
+                rs.getString("status"), rs.getTimestamp("created_at"), Money.fromBigDecimal(rs.getBigDecimal("balance")),
+                loadedNanos);
+    }
+
+    // Caller holds the lock; drop least recently used entries beyond maxEntries
+    private void trim() {
+        trim(accounts);
+        trim(userAccounts);
+    }
+
+    private <K, V> void trim(LinkedHashMap<K, V> map) {
+        java.util.Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        while (map.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private void recordHit(long ageNanos) {
+        ageNanos = Math.max(0, ageNanos); // an entry loaded just after `now` was read
+        hits.incrementAndGet();
+        hitAgeNanos.addAndGet(ageNanos);
+        maxHitAgeNanos.accumulateAndGet(ageNanos, Math::max);
+    }
+
+    public synchronized int size() {
+        return accounts.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // Age of the (oldest) entry served by a hit: how stale a hit can be w.r.t. writers
+    // that bypass invalidation
+    public double averageHitAgeMillis() {
+        long h = hits.get();
+        return h == 0 ? 0 : hitAgeNanos.get() / 1e6 / h;
+    }
+
+    public double maxHitAgeMillis() {
+        return maxHitAgeNanos.get() / 1e6;
+    }
+
+    public String stats() {
+        return String.format("size=%d hits=%d misses=%d hitRatio=%.1f%% invalidations=%d avgHitAge=%.1fms maxHitAge=%.1fms",
+                size(), hits(), misses(), hitRatio() * 100, invalidations(), averageHitAgeMillis(), maxHitAgeMillis());
+    }
+}
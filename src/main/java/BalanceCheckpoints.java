@@ -0,0 +1,311 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BalanceCheckpoints.java
+ *
+ * Point-in-time balances. A checkpoint (balance_checkpoints + balance_snapshots) stores every
+ * account's balance, credit stripes included. Each snapshot row carries its own watermark:
+ * the highest txn_id whose effect is in that balance.
+ *
+ * take() never stops the bank: it copies the accounts in chunks of CHUNK_SIZE in
+ * account_number order, one short transaction per chunk. A chunk locks only its own rows
+ * (a hot account's stripes right after its main row, the canonical order), reads their
+ * balances and MAX(txn_id) as the chunk's watermark, and commits. Transfers insert their
+ * ledger row only after locking both accounts, so a transfer on a chunk account either
+ * committed before the chunk (txn_id <= watermark, in the balance) or gets a txn_id above it.
+ * Transfers on other accounts never wait. A checkpoint becomes visible when taken_at is
+ * set after the last chunk; an interrupted run leaves taken_at NULL and is ignored.
+ *
+ * balanceAsOf(account, t) starts from the checkpoint nearest to t and applies only the
+ * successful transfers between it and t:
+ *
+ *  - forward from the last checkpoint taken at or before t: snapshot + transfers above its
+ *    watermark (up to the next checkpoint's) initiated at or before t
+ *  - backward from the next checkpoint (or from the live balance after the last one):
+ *    snapshot - transfers above the previous watermark initiated after t
+ *
+ * Both directions give the same result. Each side is a range seek on (from_account, txn_id)
+ * or (to_account, txn_id) between two watermarks, so the work is bounded by the account's
+ * activity in one checkpoint interval, not by its age.
+ */
+public final class BalanceCheckpoints {
+
+    // A completed checkpoint
+    static final class Checkpoint {
+        final long id;
+        final Timestamp takenAt;
+
+        Checkpoint(long id, Timestamp takenAt) {
+            this.id = id;
+            this.takenAt = takenAt;
+        }
+    }
+
+    // One account's row in a checkpoint
+    private static final class Snapshot {
+        final Money balance;
+        final long maxTxnId;
+
+        Snapshot(Money balance, long maxTxnId) {
+            this.balance = balance;
+            this.maxTxnId = maxTxnId;
+        }
+    }
+
+    // Net effect (credits - debits) of successful transfers on one account with txn_id in
+    // (?, ?]; the initiated_at bound is appended by the caller
+    private static final String NET_SQL = "SELECT" +
+            " COALESCE((SELECT SUM(amount) FROM transactions WHERE to_account = ? AND txn_id > ? AND txn_id <= ? AND status = 'SUCCESS' AND initiated_at %1$s ?), 0)" +
+            " - COALESCE((SELECT SUM(amount) FROM transactions WHERE from_account = ? AND txn_id > ? AND txn_id <= ? AND status = 'SUCCESS' AND initiated_at %1$s ?), 0)";
+
+    // Accounts locked per chunk transaction: bounds how long any transfer waits on take()
+    static final int CHUNK_SIZE = 1000;
+
+    private BalanceCheckpoints() {}
+
+    // Snapshot every account now; returns the checkpoint id
+    public static long take(Connection conn) throws SQLException {
+        return take(conn, null);
+    }
+
+    // Same, stamped with takenAt instead of the clock (null = now); only meaningful for
+    // building synthetic history, see BankBenchmark asof
+    static long take(Connection conn, Timestamp takenAt) throws SQLException {
+        long id;
+        String insertCheckpoint = "INSERT INTO balance_checkpoints (started_at) VALUES (CURRENT_TIMESTAMP)";
+        try (PreparedStatement ps = conn.prepareStatement(insertCheckpoint, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("Failed to insert checkpoint");
+                id = rs.getLong(1);
+            }
+        }
+        int accounts = 0;
+        int chunks = 0;
+        String last = "";
+        Iterator<String> hot = HotAccounts.hotAccounts().iterator();
+        String nextHot = hot.hasNext() ? hot.next() : null;
+        while (true) {
+            while (nextHot != null && nextHot.compareTo(last) <= 0) nextHot = hot.hasNext() ? hot.next() : null;
+            List<String> copied = snapshotChunk(conn, id, last, nextHot);
+            if (copied.isEmpty()) {
+                if (nextHot == null) break;
+                last = nextHot; // a registered hot account without a row
+                continue;
+            }
+            accounts += copied.size();
+            chunks++;
+            last = copied.get(copied.size() - 1);
+        }
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE balance_checkpoints SET taken_at = ? WHERE checkpoint_id = ?")) {
+            ps.setTimestamp(1, takenAt != null ? takenAt : new Timestamp(System.currentTimeMillis()));
+            ps.setLong(2, id);
+            ps.executeUpdate();
+        }
+        System.out.println("Balance checkpoint " + id + ": " + accounts + " accounts in " + chunks + " chunks");
+        return id;
+    }
+
+    // Copy up to CHUNK_SIZE accounts after `after` in one transaction, stopping at (and
+    // including) hotLimit so its stripes are locked right after its main row. Returns the
+    // account numbers copied, in order.
+    private static List<String> snapshotChunk(Connection conn, long checkpointId, String after, String hotLimit) throws SQLException {
+        String lockChunk = "SELECT account_number, balance FROM accounts WHERE account_number > ?" +
+                (hotLimit != null ? " AND account_number <= ?" : "") + " ORDER BY account_number LIMIT ? FOR UPDATE";
+        String lockStripes = "SELECT balance FROM account_stripes WHERE account_number = ? ORDER BY stripe_no FOR UPDATE";
+        String insertSnapshot = "INSERT INTO balance_snapshots (account_number, checkpoint_id, balance, max_txn_id) VALUES (?, ?, ?, ?)";
+        List<String> numbers = new ArrayList<>();
+        List<Money> balances = new ArrayList<>();
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(lockChunk)) {
+                ps.setString(1, after);
+                if (hotLimit != null) ps.setString(2, hotLimit);
+                ps.setInt(hotLimit != null ? 3 : 2, CHUNK_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        numbers.add(rs.getString(1));
+                        balances.add(Money.fromBigDecimal(rs.getBigDecimal(2)));
+                    }
+                }
+            }
+            if (numbers.isEmpty()) {
+                conn.commit();
+                return numbers;
+            }
+            int lastIndex = numbers.size() - 1;
+            if (numbers.get(lastIndex).equals(hotLimit)) {
+                Money total = balances.get(lastIndex);
+                try (PreparedStatement ps = conn.prepareStatement(lockStripes)) {
+                    ps.setString(1, hotLimit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) total = total.plus(Money.fromBigDecimal(rs.getBigDecimal(1)));
+                    }
+                }
+                balances.set(lastIndex, total);
+            }
+            long maxTxnId;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(txn_id), 0) FROM transactions");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                maxTxnId = rs.getLong(1);
+            }
+            try (PreparedStatement ps = conn.prepareStatement(insertSnapshot)) {
+                for (int i = 0; i < numbers.size(); i++) {
+                    ps.setString(1, numbers.get(i));
+                    ps.setLong(2, checkpointId);
+                    ps.setBigDecimal(3, balances.get(i).toBigDecimal());
+                    ps.setLong(4, maxTxnId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+            return numbers;
+        } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+            throw ex;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {}
+        }
+    }
+
+    // Balance of an account at `asOf`, null if the account did not exist then
+    public static Money balanceAsOf(Connection conn, String accountNumber, Timestamp asOf) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT created_at FROM accounts WHERE account_number = ?")) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getTimestamp(1).after(asOf)) return null;
+            }
+        }
+        Checkpoint prev = checkpoint(conn, "SELECT checkpoint_id, taken_at FROM balance_checkpoints" +
+                " WHERE taken_at <= ? ORDER BY taken_at DESC LIMIT 1", asOf);
+        Checkpoint next = checkpoint(conn, "SELECT checkpoint_id, taken_at FROM balance_checkpoints" +
+                " WHERE taken_at > ? ORDER BY taken_at LIMIT 1", asOf);
+        // an account created after its chunk of a checkpoint was copied is not in it
+        Snapshot start = prev != null ? snapshot(conn, prev, accountNumber) : null;
+        Snapshot end = next != null ? snapshot(conn, next, accountNumber) : null;
+        long lowWatermark = start != null ? start.maxTxnId : 0;
+        long highWatermark = end != null ? end.maxTxnId : Long.MAX_VALUE;
+
+        long untilEnd = (end != null ? next.takenAt.getTime() : System.currentTimeMillis()) - asOf.getTime();
+        if (start != null && asOf.getTime() - prev.takenAt.getTime() <= untilEnd) {
+            return start.balance.plus(net(conn, accountNumber, lowWatermark, highWatermark, "<=", asOf));
+        }
+        if (end != null) {
+            return end.balance.minus(net(conn, accountNumber, lowWatermark, highWatermark, ">", asOf));
+        }
+        return liveMinusLater(conn, accountNumber, lowWatermark, asOf);
+    }
+
+    // Same, on a connection borrowed from the pool
+    public static Money balanceAsOf(ConnectionPool pool, String accountNumber, Timestamp asOf) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return balanceAsOf(conn, accountNumber, asOf);
+        }
+    }
+
+    private static Checkpoint checkpoint(Connection conn, String q, Timestamp asOf) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            ps.setTimestamp(1, asOf);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Checkpoint(rs.getLong(1), rs.getTimestamp(2)) : null;
+            }
+        }
+    }
+
+    // Balance and watermark in a checkpoint, null if the account is not in it
+    private static Snapshot snapshot(Connection conn, Checkpoint c, String accountNumber) throws SQLException {
+        String q = "SELECT balance, max_txn_id FROM balance_snapshots WHERE account_number = ? AND checkpoint_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            ps.setString(1, accountNumber);
+            ps.setLong(2, c.id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Snapshot(Money.fromBigDecimal(rs.getBigDecimal(1)), rs.getLong(2)) : null;
+            }
+        }
+    }
+
+    private static Money net(Connection conn, String accountNumber, long afterTxnId, long upToTxnId, String op, Timestamp asOf)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(String.format(NET_SQL, op))) {
+            for (int side = 0; side < 2; side++) {
+                ps.setString(side * 4 + 1, accountNumber);
+                ps.setLong(side * 4 + 2, afterTxnId);
+                ps.setLong(side * 4 + 3, upToTxnId);
+                ps.setTimestamp(side * 4 + 4, asOf);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return Money.fromBigDecimal(rs.getBigDecimal(1));
+            }
+        }
+    }
+
+    // Live balance minus the transfers after asOf, in one statement so both sides see the
+    // same committed state
+    private static Money liveMinusLater(Connection conn, String accountNumber, long afterTxnId, Timestamp asOf) throws SQLException {
+        String q = "SELECT a.balance + COALESCE((SELECT SUM(s.balance) FROM account_stripes s WHERE s.account_number = a.account_number), 0)" +
+                " - (" + String.format(NET_SQL, ">").substring("SELECT".length()) + ")" +
+                " FROM accounts a WHERE a.account_number = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            for (int side = 0; side < 2; side++) {
+                ps.setString(side * 4 + 1, accountNumber);
+                ps.setLong(side * 4 + 2, afterTxnId);
+                ps.setLong(side * 4 + 3, Long.MAX_VALUE);
+                ps.setTimestamp(side * 4 + 4, asOf);
+            }
+            ps.setString(9, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? Money.fromBigDecimal(rs.getBigDecimal(1)) : null;
+            }
+        }
+    }
+
+    // Take a checkpoint every intervalMs on a dedicated connection, aligned to multiples of
+    // the interval since local midnight (a 24h interval runs at midnight); shut the returned
+    // scheduler down to stop it (the connection is closed at JVM exit)
+    static ScheduledExecutorService startCheckpointer(String jdbcUrl, String user, String pass, long intervalMs) throws SQLException {
+        Connection conn = DriverManager.getConnection(jdbcUrl, user, pass);
+        ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "balance-checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        long now = System.currentTimeMillis();
+        long midnight = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long initialDelay = intervalMs - (now - midnight) % intervalMs;
+        checkpointer.scheduleAtFixedRate(() -> {
+            try {
+                take(conn);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }, initialDelay, intervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {}
+        }));
+        return checkpointer;
+    }
+}
@@ -0,0 +1,477 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * BalanceEngine.java
+ *
+ * Optional in-memory transfer engine for high volume:
+ *  - loads every row of `accounts` into memory at start()
+ *  - producers publish transfers into a pre-allocated ring buffer (no locks on the hot path)
+ *  - a single sequencer thread validates and applies them in order, appends every accepted
+ *    transfer to an append-only journal and fsyncs it before acknowledging the caller
+ *  - a write-behind thread flushes balances plus `transactions` rows back to H2 in JDBC
+ *    batches, recording the last flushed journal sequence in the same commit; audit events
+ *    go through BankApp.auditLogger() like every other transfer path, in whatever mode
+ *    it is configured
+ *
+ * On start() any journal entries newer than the flushed sequence are replayed, so an
+ * acknowledged transfer survives a crash even if it never reached H2. Once the journal
+ * exceeds JOURNAL_COMPACT_BYTES the sequencer rewrites it with only the transfers not yet
+ * flushed, so replay time stays bounded by the write-behind lag.
+ *
+ * If the journal cannot be written, the failing batch is undone (balances restored, journal
+ * truncated back to where the batch started) and reported as journal_write_failed; the
+ * engine then stops and fails every transfer still in the ring with engine_stopped.
+ *
+ * Failure reasons and semantics match BankApp.transfer(): failed transfers are reported
+ * to the caller and not persisted. While the engine runs it owns the balances of the
+ * accounts it loaded -- do not call BankApp.transfer() on them at the same time. Accounts
+ * created after start() are unknown to the engine until it is restarted.
+ */
+public class BalanceEngine implements AutoCloseable {
+
+    private static final int FLUSH_BATCH = 5000;
+    private static final long FLUSH_INTERVAL_MS = 50;
+    private static final long JOURNAL_COMPACT_BYTES = 64L * 1024 * 1024;
+    // Flag set in `claimed` when the engine stops: no ring sequence is handed out after it,
+    // so the sequencer knows the final count and completes every claimed slot
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    // One ring buffer entry; `sequence` is written last and publishes the other fields
+    private static final class Slot {
+        volatile long sequence = -1;
+        TransferRequest request;
+        CompletableFuture<TransferResult> future;
+    }
+
+    // An accepted transfer waiting to be written back to H2
+    private static final class Accepted {
+        final long seq;
+        final TransferRequest request;
+        final long fromBalance; // balances right after this transfer, in minor units
+        final long toBalance;
+        final AuditEvent event; // created on acceptance, so it keeps the transfer's time
+
+        Accepted(long seq, TransferRequest request, long fromBalance, long toBalance) {
+            this.seq = seq;
+            this.request = request;
+            this.fromBalance = fromBalance;
+            this.toBalance = toBalance;
+            this.event = AuditEvent.transfer(request.initiatedBy, request.fromAccount, request.toAccount, request.amount);
+        }
+    }
+
+    private final Connection flushConn;
+    private final Path journalPath;
+    private final Slot[] ring;
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong();   // next ring sequence to hand to a producer, | CLOSED once stopped
+    private final AtomicLong consumed = new AtomicLong();  // ring sequences below this are free again
+
+    // touched only by the sequencer thread after start()
+    private final Map<String, long[]> balances = new HashMap<>();
+    private long journalSeq;
+    private FileChannel journal;
+
+    private final ConcurrentLinkedQueue<Accepted> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private Thread sequencer;
+    private Thread flusher;
+
+    // flushConn is used exclusively by the write-behind thread; ringSize must be a power of two
+    public BalanceEngine(Connection flushConn, Path journalPath, int ringSize) {
+        if (Integer.bitCount(ringSize) != 1) throw new IllegalArgumentException("ringSize must be a power of two");
+        this.flushConn = flushConn;
+        this.journalPath = journalPath;
+        this.ring = new Slot[ringSize];
+        for (int i = 0; i < ringSize; i++) ring[i] = new Slot();
+        this.mask = ringSize - 1;
+    }
+
+    // Load balances, replay the unflushed journal tail and start the sequencer/flusher threads
+    public void start() throws SQLException, IOException {
+        try (Statement st = flushConn.createStatement()) {
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS engine_state (" +
+                " id INT PRIMARY KEY," +
+                " flushed_seq BIGINT NOT NULL" +
+                ")"
+            );
+            // the engine keeps one balance per account: fold hot-account stripes into it first
+            HotAccounts.foldAll(flushConn);
+            try (ResultSet rs = st.executeQuery("SELECT account_number, balance FROM accounts")) {
+                while (rs.next()) {
+                    balances.put(rs.getString(1), new long[] {Money.fromBigDecimal(rs.getBigDecimal(2)).minor()});
+                }
+            }
+            long flushedSeq = 0;
+            try (ResultSet rs = st.executeQuery("SELECT flushed_seq FROM engine_state WHERE id = 1")) {
+                if (rs.next()) flushedSeq = rs.getLong(1);
+            }
+            journalSeq = replayJournal(flushedSeq);
+        }
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        running = true;
+        sequencer = new Thread(this::runSequencer, "balance-engine-sequencer");
+        flusher = new Thread(this::runFlusher, "balance-engine-flusher");
+        sequencer.start();
+        flusher.start();
+        System.out.println("Balance engine started with " + balances.size() + " accounts (journal seq " + journalSeq + ")");
+    }
+
+    // Publish a transfer; the future completes once it is applied and journaled (or with
+    // engine_stopped). Throws IllegalStateException once the engine has stopped.
+    public CompletableFuture<TransferResult> submit(TransferRequest request) {
+        long seq = running ? claim() : -1;
+        if (seq < 0) throw new IllegalStateException("engine not running");
+        CompletableFuture<TransferResult> future = new CompletableFuture<>();
+        while (seq - consumed.get() >= ring.length) Thread.yield(); // ring full: wait for the sequencer
+        Slot slot = ring[(int) (seq & mask)];
+        slot.request = request;
+        slot.future = future;
+        slot.sequence = seq;
+        return future;
+    }
+
+    // Next ring sequence, or -1 once the engine has stopped handing them out
+    private long claim() {
+        while (true) {
+            long c = claimed.get();
+            if ((c & CLOSED) != 0) return -1;
+            if (claimed.compareAndSet(c, c + 1)) return c;
+        }
+    }
+
+    // Hand out no more ring sequences; the slots claimed so far are still completed
+    private void stopClaims() {
+        while (true) {
+            long c = claimed.get();
+            if ((c & CLOSED) != 0 || claimed.compareAndSet(c, c | CLOSED)) return;
+        }
+    }
+
+    // Blocking convenience with the same contract as BankApp.transfer()
+    public boolean transfer(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        return submit(new TransferRequest(fromAccount, toAccount, amount, initiatedBy)).join().success;
+    }
+
+    // Current in-memory balance, or null if the account is unknown (sequencer-owned, so approximate)
+    public Money balanceOf(String accountNumber) {
+        long[] bal = balances.get(accountNumber);
+        return bal == null ? null : Money.ofMinor(bal[0]);
+    }
+
+    // Single writer: drain every published slot, apply, journal + fsync once, then acknowledge
+    private void runSequencer() {
+        List<Slot> batch = new ArrayList<>();
+        List<TransferResult> results = new ArrayList<>();
+        List<Accepted> accepted = new ArrayList<>();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        long next = consumed.get();
+        boolean failed = false;
+
+        while (running || next < (claimed.get() & ~CLOSED)) {
+            Slot slot = ring[(int) (next & mask)];
+            while (slot.sequence == next) {
+                batch.add(slot);
+                next++;
+                slot = ring[(int) (next & mask)];
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(10_000);
+                continue;
+            }
+
+            if (failed) {
+                // claimed before the engine stopped; never applied
+                for (Slot s : batch) s.future.complete(new TransferResult(s.request, false, "engine_stopped"));
+            } else {
+                long seqBefore = journalSeq;
+                long journalEnd = -1;
+                boolean acknowledged = false;
+                try {
+                    journalEnd = journal.size();
+                    for (Slot s : batch) {
+                        TransferResult res = apply(s.request, accepted);
+                        results.add(res);
+                        if (res.success) writeJournalRecord(out, accepted.get(accepted.size() - 1));
+                    }
+                    if (buf.size() > 0) {
+                        journal.write(ByteBuffer.wrap(buf.toByteArray()));
+                        journal.force(false);
+                    }
+                    pending.addAll(accepted);
+                    for (int i = 0; i < batch.size(); i++) batch.get(i).future.complete(results.get(i));
+                    acknowledged = true;
+                    if (journal.size() > JOURNAL_COMPACT_BYTES) compactJournal();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    if (acknowledged) {
+                        // only the compaction failed: the batch is journaled and acknowledged
+                        System.out.println("Balance engine: journal compaction failed, stopping");
+                    } else {
+                        // memory reflects this batch but the journal may not: undo it in both
+                        undo(accepted);
+                        journalSeq = seqBefore;
+                        truncateJournal(journalEnd, seqBefore);
+                        for (Slot s : batch) s.future.complete(new TransferResult(s.request, false, "journal_write_failed"));
+                    }
+                    failed = true;
+                    stopClaims();
+                    running = false;
+                }
+            }
+
+            for (Slot s : batch) {
+                s.request = null;
+                s.future = null;
+            }
+            consumed.set(next);
+            batch.clear();
+            results.clear();
+            accepted.clear();
+            buf.reset();
+        }
+    }
+
+    // Validate and apply one transfer against the in-memory balances (sequencer thread only)
+    private TransferResult apply(TransferRequest r, List<Accepted> accepted) {
+        long amount = r.amount.minor();
+        long[] from = balances.get(r.fromAccount);
+        long[] to = balances.get(r.toAccount);
+        String reason = null;
+        if (amount <= 0) reason = "invalid_amount"; // a negative amount would reverse the transfer
+        else if (r.fromAccount.equals(r.toAccount)) reason = "same_account";
+        else if (from == null) reason = "source_account_not_found";
+        else if (from[0] < amount) reason = "insufficient_funds";
+        else if (to == null) reason = "destination_account_not_found";
+        if (reason != null) return new TransferResult(r, false, reason);
+
+        from[0] -= amount;
+        to[0] += amount;
+        accepted.add(new Accepted(++journalSeq, r, from[0], to[0]));
+        return new TransferResult(r, true, null);
+    }
+
+    // Reverse accepted transfers, newest first (sequencer thread only)
+    private void undo(List<Accepted> accepted) {
+        for (int i = accepted.size() - 1; i >= 0; i--) {
+            TransferRequest r = accepted.get(i).request;
+            balances.get(r.fromAccount)[0] += r.amount.minor();
+            balances.get(r.toAccount)[0] -= r.amount.minor();
+        }
+    }
+
+    // Cut the journal back to `end` after a failed batch, so a restart does not replay
+    // transfers whose callers were told they failed
+    private void truncateJournal(long end, long lastGoodSeq) {
+        try {
+            if (end >= 0) {
+                journal.truncate(end);
+                journal.force(false);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            System.out.println("Balance engine: could not truncate the journal after seq " + lastGoodSeq
+                    + "; records after it were never acknowledged and must be removed before restart");
+        }
+    }
+
+    // Replace the journal with the transfers still waiting for write-behind (everything else
+    // is in H2 as of engine_state.flushed_seq); sequencer thread only
+    private void compactJournal() throws IOException {
+        Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".compact");
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        for (Accepted a : pending) writeJournalRecord(out, a); // may include just-flushed ones; replay skips them
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(buf.toByteArray()));
+            ch.force(true);
+        }
+        journal.close();
+        Files.move(tmp, journalPath, java.nio.file.StandardCopyOption.ATOMIC_MOVE, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void writeJournalRecord(DataOutputStream out, Accepted a) throws IOException {
+        out.writeLong(a.seq);
+        out.writeUTF(a.request.fromAccount);
+        out.writeUTF(a.request.toAccount);
+        out.writeLong(a.request.amount.minor());
+        out.writeLong(a.request.initiatedBy);
+    }
+
+    // Re-apply journaled transfers that never reached H2; returns the last journal sequence
+    private long replayJournal(long flushedSeq) throws IOException {
+        long last = flushedSeq;
+        if (!Files.exists(journalPath)) return last;
+        List<Accepted> replayed = new ArrayList<>();
+        long validEnd = 0;
+        try (FileChannel ch = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long[] read = {0};
+            InputStream counting = new java.io.FilterInputStream(new java.io.BufferedInputStream(Channels.newInputStream(ch))) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) read[0]++;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) read[0] += n;
+                    return n;
+                }
+            };
+            DataInputStream in = new DataInputStream(counting);
+            while (true) {
+                long seq;
+                TransferRequest r;
+                try {
+                    seq = in.readLong();
+                    r = new TransferRequest(in.readUTF(), in.readUTF(), Money.ofMinor(in.readLong()), in.readLong());
+                } catch (EOFException eof) {
+                    break; // end of journal (or a torn last record that was never acknowledged)
+                }
+                validEnd = read[0];
+                if (seq <= flushedSeq) continue;
+                journalSeq = seq - 1;
+                TransferResult res = apply(r, replayed);
+                if (!res.success) System.out.println("Journal replay skipped seq " + seq + ": " + res.reason);
+                last = seq;
+            }
+            // drop a torn tail so new records are appended on a record boundary
+            ch.truncate(validEnd);
+        }
+        pending.addAll(replayed);
+        if (!replayed.isEmpty()) System.out.println("Replayed " + replayed.size() + " journaled transfers");
+        return last;
+    }
+
+    // Write-behind: periodically push accepted transfers to H2 in batches
+    private void runFlusher() {
+        while (running || !pending.isEmpty() || sequencer.isAlive()) {
+            try {
+                if (pending.isEmpty()) {
+                    Thread.sleep(FLUSH_INTERVAL_MS);
+                    continue;
+                }
+                flushBatch();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SQLException ex) {
+                // batch stays queued (peeked, not polled) and is retried on the next pass
+                ex.printStackTrace();
+                try {
+                    Thread.sleep(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void flushBatch() throws SQLException {
+        List<Accepted> batch = new ArrayList<>();
+        Iterator<Accepted> it = pending.iterator();
+        while (it.hasNext() && batch.size() < FLUSH_BATCH) batch.add(it.next());
+
+        // last write wins per account: balances as of the newest transfer in the batch
+        // and the net change per account, for the owners' user_summary rows
+        Map<String, Long> latest = new TreeMap<>();
+        Map<String, Money> deltas = new TreeMap<>();
+        for (Accepted a : batch) {
+            latest.put(a.request.fromAccount, a.fromBalance);
+            latest.put(a.request.toAccount, a.toBalance);
+            deltas.merge(a.request.fromAccount, Money.ZERO.minus(a.request.amount), Money::plus);
+            deltas.merge(a.request.toAccount, a.request.amount, Money::plus);
+        }
+
+        String updateBalance = "UPDATE accounts SET balance = ?, version = version + 1 WHERE account_number = ?";
+        String insertTxn = "INSERT INTO transactions (txn_ref, from_account, to_account, amount, txn_type, status, initiated_by, remarks) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        String saveSeq = "MERGE INTO engine_state (id, flushed_seq) KEY (id) VALUES (1, ?)";
+        try {
+            flushConn.setAutoCommit(false);
+            try (PreparedStatement ps = flushConn.prepareStatement(updateBalance)) {
+                for (Map.Entry<String, Long> e : latest.entrySet()) {
+                    ps.setBigDecimal(1, Money.ofMinor(e.getValue()).toBigDecimal());
+                    ps.setString(2, e.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            UserSummary.applyDeltas(flushConn, deltas);
+            try (PreparedStatement ps = flushConn.prepareStatement(insertTxn)) {
+                for (Accepted a : batch) {
+                    ps.setLong(1, BankApp.TXN_IDS.next());
+                    ps.setString(2, a.request.fromAccount);
+                    ps.setString(3, a.request.toAccount);
+                    ps.setBigDecimal(4, a.request.amount.toBigDecimal());
+                    ps.setString(5, "TRANSFER");
+                    ps.setString(6, "SUCCESS");
+                    ps.setLong(7, a.request.initiatedBy);
+                    ps.setString(8, "Internal transfer");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            List<AuditEvent> events = new ArrayList<>(batch.size());
+            for (Accepted a : batch) events.add(a.event);
+            BankApp.auditLogger().logAll(flushConn, events);
+            try (PreparedStatement ps = flushConn.prepareStatement(saveSeq)) {
+                ps.setLong(1, batch.get(batch.size() - 1).seq);
+                ps.executeUpdate();
+            }
+            flushConn.commit();
+            BankApp.auditLogger().afterCommit(flushConn);
+            for (int i = 0; i < batch.size(); i++) pending.poll();
+        } catch (SQLException ex) {
+            try {
+                flushConn.rollback();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+            BankApp.auditLogger().afterRollback(flushConn);
+            throw ex;
+        } finally {
+            try {
+                flushConn.setAutoCommit(true);
+            } catch (SQLException ignore) {}
+        }
+    }
+
+    // Stop accepting transfers, drain the ring, flush everything to H2 and close the journal
+    @Override
+    public void close() throws IOException {
+        stopClaims(); // before running = false: the sequencer then drains every claimed slot
+        running = false;
+        try {
+            if (sequencer != null) sequencer.join();
+            if (flusher != null) flusher.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) journal.close();
+    }
+}
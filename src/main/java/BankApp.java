@@ -1,6 +1,6 @@
 import java.sql.*;
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.*;
 
 /**
  * BankApp.java
@@ -11,240 +11,724 @@ import java.util.UUID;
  *  - Create users, create accounts
  *  - Show account overview
  *  - Perform internal transfer with ACID transaction handling
+ *  - Operations borrow connections from a bounded pool (ConnectionPool)
  *
  * How to run: see instructions in the message.
  */
 public class BankApp {
 
     // H2 embedded file DB (creates ./bankdb.mv.db)
-    private static final String JDBC_URL = "jdbc:h2:./bankdb;AUTO_SERVER=TRUE";
-    private static final String DB_USER = "sa";
-    private static final String DB_PASS = "";
+    static final String JDBC_URL = "jdbc:h2:./bankdb;AUTO_SERVER=TRUE";
+    static final String DB_USER = "sa";
+    static final String DB_PASS = "";
+
+    // Compare-and-set attempts in OPTIMISTIC mode before falling back to row locks
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 5;
+
+    // Connection pool sizing for the demo (see ConnectionPool)
+    static final int POOL_SIZE = 10;
+    static final long POOL_ACQUIRE_TIMEOUT_MS = 5_000;
+    static final long POOL_IDLE_TIMEOUT_MS = 60_000;
+    static final long POOL_LEAK_THRESHOLD_MS = 30_000;
+
+    // Committed idempotency keys kept in memory (the transactions table remains authoritative)
+    static final int IDEMPOTENCY_CACHE_SIZE = 100_000;
+    static final long IDEMPOTENCY_TTL_MS = 24 * 60 * 60 * 1000L;
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+    static final IdempotencyCache IDEMPOTENCY_CACHE = new IdempotencyCache(IDEMPOTENCY_CACHE_SIZE, IDEMPOTENCY_TTL_MS);
+    // Failure reason when an idempotency key comes back with a different transfer
+    static final String IDEMPOTENCY_CONFLICT = "idempotency_conflict";
+
+    // transactions.txn_ref generator; run every process writing to the same database with its
+    // own -Dbank.nodeId=0..1023
+    static final TxnIdGenerator TXN_IDS = new TxnIdGenerator(Integer.getInteger("bank.nodeId", 0));
+
+    // Where audit() writes; SYNC (in the caller's transaction) unless replaced with useAuditLogger()
+    private static volatile AuditLogger auditLogger = AuditLogger.sync();
+
+    // Accounts of one user (parameter: user_id); balance includes the credit stripes of hot accounts
+    static final String ACCOUNT_OVERVIEW_SQL = "SELECT a.account_number, a.user_id, a.type, a.status, a.created_at," +
+            " a.balance + COALESCE((SELECT SUM(s.balance) FROM account_stripes s WHERE s.account_number = a.account_number), 0) AS balance" +
+            " FROM accounts a WHERE a.user_id = ? ORDER BY a.account_number";
+
+    // One account by number (parameter: account_number); balance includes credit stripes
+    static final String ACCOUNT_LOOKUP_SQL = "SELECT a.account_number, a.user_id, a.type, a.status, a.created_at," +
+            " a.balance + COALESCE((SELECT SUM(s.balance) FROM account_stripes s WHERE s.account_number = a.account_number), 0) AS balance" +
+            " FROM accounts a WHERE a.account_number = ?";
+
+    // Overview / lookup read cache (see BalanceCache); entries older than the max age are
+    // reloaded, which bounds staleness from writers that bypass the invalidation hooks
+    static final int BALANCE_CACHE_SIZE = 100_000;
+    static final long BALANCE_CACHE_MAX_AGE_MS = 5_000;
+    static final BalanceCache BALANCE_CACHE = new BalanceCache(BALANCE_CACHE_SIZE, BALANCE_CACHE_MAX_AGE_MS);
+
+    // Default interval of the balance checkpoint job (see BalanceCheckpoints): end of day
+    static final long CHECKPOINT_INTERVAL_MS = 24 * 60 * 60 * 1000L;
 
     public static void main(String[] args) {
-        try (Connection conn = DriverManager.getConnection(JDBC_URL, DB_USER, DB_PASS)) {
-            System.out.println("Connected to DB.");
-            createSchema(conn);
+        try (ConnectionPool pool = new ConnectionPool(JDBC_URL, DB_USER, DB_PASS, POOL_SIZE,
+                POOL_ACQUIRE_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS)) {
+            try (Connection conn = pool.getConnection()) {
+                System.out.println("Connected to DB.");
+                createSchema(conn);
+            }
 
             // Demo flow
-            long alice = createUser(conn, "Alice Mehta", "alice@example.com", "CUSTOMER");
-            long bob   = createUser(conn, "Bob Sharma", "bob@example.com", "CUSTOMER");
+            long alice = createUser(pool, "Alice Mehta", "alice@example.com", "CUSTOMER");
+            long bob   = createUser(pool, "Bob Sharma", "bob@example.com", "CUSTOMER");
 
-            createAccount(conn, alice, "ACCT1000001", "SAVINGS", 15000.00);
-            createAccount(conn, alice, "ACCT1000002", "SAVINGS", 5000.00);
-            createAccount(conn, bob,   "ACCT2000001", "SAVINGS", 2000.00);
+            createAccount(pool, alice, "ACCT1000001", "SAVINGS", Money.of("15000.00"));
+            createAccount(pool, alice, "ACCT1000002", "SAVINGS", Money.of("5000.00"));
+            createAccount(pool, bob,   "ACCT2000001", "SAVINGS", Money.of("2000.00"));
 
             System.out.println("\n--- Before transfer ---");
-            printAccounts(conn, alice);
-            printAccounts(conn, bob);
+            printAccounts(pool, alice);
+            printAccounts(pool, bob);
 
             System.out.println("\nAttempting transfer of 3000.00 from ACCT1000001 -> ACCT2000001");
-            boolean ok = transfer(conn, "ACCT1000001", "ACCT2000001", 3000.00, alice);
+            boolean ok = transfer(pool, "ACCT1000001", "ACCT2000001", Money.of("3000.00"), alice, TransferMode.PESSIMISTIC);
             System.out.println("Transfer success? " + ok);
 
             System.out.println("\n--- After transfer ---");
-            printAccounts(conn, alice);
-            printAccounts(conn, bob);
-
-            System.out.println("\nTransactions table sample:");
-            printTransactions(conn);
+            printAccounts(pool, alice);
+            printAccounts(pool, bob);
+
+            try (Connection conn = pool.getConnection()) {
+                System.out.println("\nBatch of 3 transfers in one transaction:");
+                List<TransferResult> results = transferBatch(conn, Arrays.asList(
+                        new TransferRequest("ACCT1000002", "ACCT2000001", Money.of("1000.00"), alice),
+                        new TransferRequest("ACCT2000001", "ACCT1000001", Money.of("500.00"), bob),
+                        new TransferRequest("ACCT1000002", "ACCT9999999", Money.of("10.00"), alice)));
+                for (TransferResult r : results) System.out.println("  " + r);
+
+                System.out.println("\nTransactions table sample:");
+                printTransactions(conn);
+
+                System.out.println("\nAudit logs sample:");
+                printAudit(conn);
+            }
 
-            System.out.println("\nAudit logs sample:");
-            printAudit(conn);
+            System.out.println("\nConnection pool: " + pool.stats());
 
         } catch (SQLException ex) {
             ex.printStackTrace();
         }
     }
 
-    // Create minimal schema (users, accounts, transactions, audit_logs)
-    private static void createSchema(Connection conn) throws SQLException {
-        try (Statement st = conn.createStatement()) {
-            // users
-            st.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS users (" +
-                " user_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
-                " full_name VARCHAR(200) NOT NULL," +
-                " email VARCHAR(255) UNIQUE NOT NULL," +
-                " role VARCHAR(50) NOT NULL," +
-                " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")"
-            );
-
-            // accounts
-            st.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS accounts (" +
-                " account_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
-                " user_id BIGINT NOT NULL," +
-                " account_number VARCHAR(50) UNIQUE NOT NULL," +
-                " type VARCHAR(50) NOT NULL," +
-                " balance DECIMAL(18,2) DEFAULT 0.00," +
-                " status VARCHAR(20) DEFAULT 'ACTIVE'," +
-                " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                " FOREIGN KEY (user_id) REFERENCES users(user_id)" +
-                ")"
-            );
-
-            // transactions (simple ledger)
-            st.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS transactions (" +
-                " txn_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
-                " txn_uuid VARCHAR(36) NOT NULL," +
-                " from_account VARCHAR(50)," +
-                " to_account VARCHAR(50)," +
-                " amount DECIMAL(18,2) NOT NULL," +
-                " currency CHAR(3) DEFAULT 'INR'," +
-                " txn_type VARCHAR(50) NOT NULL," +
-                " status VARCHAR(50) NOT NULL," +
-                " initiated_by BIGINT," +
-                " initiated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                " remarks VARCHAR(500)" +
-                ")"
-            );
-
-            // audit logs
-            st.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS audit_logs (" +
-                " id BIGINT AUTO_INCREMENT PRIMARY KEY," +
-                " user_id BIGINT," +
-                " action VARCHAR(500)," +
-                " meta VARCHAR(2000)," +
-                " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                ")"
-            );
-        }
+    // Create or upgrade the schema (see SchemaMigrations)
+    static void createSchema(Connection conn) throws SQLException {
+        SchemaMigrations.migrate(conn);
+        HotAccounts.load(conn);
     }
 
     // Create user, return user_id
-    private static long createUser(Connection conn, String name, String email, String role) throws SQLException {
-        String sql = "INSERT INTO users (full_name, email, role) VALUES (?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, name);
-            ps.setString(2, email);
-            ps.setString(3, role);
-            ps.executeUpdate();
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) {
-                    long id = rs.getLong(1);
-                    audit(conn, id, "CREATE_USER", "email=" + email + ";role=" + role);
-                    System.out.println("Created user " + name + " (id=" + id + ")");
-                    return id;
+    static long createUser(Connection conn, String name, String email, String role) throws SQLException {
+        long id = inTransaction(conn, () -> {
+            String sql = "INSERT INTO users (full_name, email, role) VALUES (?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, name);
+                ps.setString(2, email);
+                ps.setString(3, role);
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        long userId = rs.getLong(1);
+                        UserSummary.userCreated(conn, userId);
+                        audit(conn, new AuditEvent(userId, AuditAction.CREATE_USER, null, null, null, "email=" + email + ";role=" + role));
+                        return userId;
+                    }
                 }
             }
+            throw new SQLException("Failed to insert user");
+        });
+        System.out.println("Created user " + name + " (id=" + id + ")");
+        return id;
+    }
+
+    // Same, on a connection borrowed from the pool
+    static long createUser(ConnectionPool pool, String name, String email, String role) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return createUser(conn, name, email, role);
         }
-        throw new SQLException("Failed to insert user");
     }
 
     // Create account for user
-    private static long createAccount(Connection conn, long userId, String acctNumber, String type, double initialBalance) throws SQLException {
-        String sql = "INSERT INTO accounts (user_id, account_number, type, balance) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setLong(1, userId);
-            ps.setString(2, acctNumber);
-            ps.setString(3, type);
-            ps.setBigDecimal(4, new java.math.BigDecimal(String.format("%.2f", initialBalance)));
-            ps.executeUpdate();
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) {
-                    long id = rs.getLong(1);
-                    audit(conn, userId, "CREATE_ACCOUNT", "account_number=" + acctNumber + ";initial_balance=" + initialBalance);
-                    System.out.println("Created account " + acctNumber + " (id=" + id + ")");
-                    return id;
+    static long createAccount(Connection conn, long userId, String acctNumber, String type, Money initialBalance) throws SQLException {
+        long id = inTransaction(conn, () -> {
+            String sql = "INSERT INTO accounts (user_id, account_number, type, balance) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setLong(1, userId);
+                ps.setString(2, acctNumber);
+                ps.setString(3, type);
+                ps.setBigDecimal(4, initialBalance.toBigDecimal());
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        long accountId = rs.getLong(1);
+                        UserSummary.accountCreated(conn, userId, acctNumber, initialBalance);
+                        audit(conn, new AuditEvent(userId, AuditAction.CREATE_ACCOUNT, acctNumber, null, initialBalance, null));
+                        return accountId;
+                    }
                 }
             }
+            throw new SQLException("Failed to create account");
+        });
+        BALANCE_CACHE.invalidateUser(userId);
+        System.out.println("Created account " + acctNumber + " (id=" + id + ")");
+        return id;
+    }
+
+    // Same, on a connection borrowed from the pool
+    static long createAccount(ConnectionPool pool, long userId, String acctNumber, String type, Money initialBalance) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return createAccount(conn, userId, acctNumber, type, initialBalance);
         }
-        throw new SQLException("Failed to create account");
     }
 
-    // Print accounts for a user
-    private static void printAccounts(Connection conn, long userId) throws SQLException {
-        String q = "SELECT account_number, type, balance, status, created_at FROM accounts WHERE user_id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(q)) {
-            ps.setLong(1, userId);
-            try (ResultSet rs = ps.executeQuery()) {
-                System.out.println("Accounts for user_id=" + userId + ":");
-                boolean found = false;
-                while (rs.next()) {
-                    found = true;
-                    String an = rs.getString("account_number");
-                    String type = rs.getString("type");
-                    String bal = rs.getBigDecimal("balance").toPlainString();
-                    String status = rs.getString("status");
-                    Timestamp ts = rs.getTimestamp("created_at");
-                    System.out.printf("  %s | %s | %s | %s | created:%s%n", an, type, bal, status, ts);
-                }
-                if (!found) System.out.println("  (none)");
+    private interface TxnWork<T> {
+        T run() throws SQLException;
+    }
+
+    // Run `work` as one transaction if conn is in auto-commit mode; otherwise it joins the
+    // caller's transaction, which the caller commits (and reports to the AuditLogger)
+    private static <T> T inTransaction(Connection conn, TxnWork<T> work) throws SQLException {
+        if (!conn.getAutoCommit()) return work.run();
+        try {
+            conn.setAutoCommit(false);
+            T result = work.run();
+            conn.commit();
+            auditLogger.afterCommit(conn);
+            return result;
+        } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
             }
+            auditLogger.afterRollback(conn);
+            throw ex;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {}
+        }
+    }
+
+    // Print accounts for a user (served from BALANCE_CACHE when possible)
+    private static void printAccounts(List<BalanceCache.AccountView> accounts, long userId) {
+        System.out.println("Accounts for user_id=" + userId + ":");
+        for (BalanceCache.AccountView a : accounts) {
+            System.out.printf("  %s | %s | %s | %s | created:%s%n", a.accountNumber, a.type, a.balance, a.status, a.createdAt);
         }
+        if (accounts.isEmpty()) System.out.println("  (none)");
+    }
+
+    // Same, borrowing a connection from the pool only on a cache miss
+    static void printAccounts(ConnectionPool pool, long userId) throws SQLException {
+        printAccounts(BALANCE_CACHE.overview(pool, userId), userId);
     }
 
     // Core: perform internal transfer with transactional safety
     // Returns true if success, false otherwise
-    private static boolean transfer(Connection conn, String fromAccount, String toAccount, double amount, long initiatedBy) {
-        String selectForUpdate = "SELECT balance FROM accounts WHERE account_number = ? FOR UPDATE";
-        String updateBalance = "UPDATE accounts SET balance = ? WHERE account_number = ?";
-        String insertTxn = "INSERT INTO transactions (txn_uuid, from_account, to_account, amount, txn_type, status, initiated_by, remarks) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-        boolean success = false;
+    static boolean transfer(Connection conn, String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        return transfer(conn, fromAccount, toAccount, amount, initiatedBy, TransferMode.PESSIMISTIC);
+    }
+
+    // Same as above with an explicit balance update strategy (see TransferMode)
+    static boolean transfer(Connection conn, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                            TransferMode mode) {
+        return transfer(conn, fromAccount, toAccount, amount, initiatedBy, mode, null);
+    }
+
+    // Same, with a client-supplied idempotency key (null for none, at most 64 chars). A retry
+    // with the key of a transfer that already committed returns true without transferring
+    // again: answered from IDEMPOTENCY_CACHE if possible, else from the unique
+    // transactions.idempotency_key column. Failed transfers do not consume the key.
+    // A key already used for a different transfer (from, to, amount) returns false.
+    static boolean transfer(Connection conn, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                            TransferMode mode, String idempotencyKey) {
+        return transferWithKey(conn, fromAccount, toAccount, amount, initiatedBy, mode, idempotencyKey) == null;
+    }
+
+    // Same, returning null on success, otherwise the failure reason: a business reason,
+    // IDEMPOTENCY_CONFLICT, or "error" for a database error
+    static String transferWithKey(Connection conn, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                                  TransferMode mode, String idempotencyKey) {
+        if (amount == null || !amount.isPositive()) {
+            System.out.println("Transfer rejected: amount must be positive, got " + amount);
+            return "invalid_amount";
+        }
+        String fingerprint = idempotencyKey != null ? IdempotencyCache.fingerprint(fromAccount, toAccount, amount) : null;
+        if (idempotencyKey != null) {
+            String cached = IDEMPOTENCY_CACHE.get(idempotencyKey);
+            if (cached != null) return replay(idempotencyKey, cached, fingerprint);
+        }
+        String result;
         try {
             conn.setAutoCommit(false); // begin transaction
 
-            // lock source
-            java.math.BigDecimal fromBal;
-            try (PreparedStatement ps = conn.prepareStatement(selectForUpdate)) {
-                ps.setString(1, fromAccount);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) {
-                        insertTransactionRecord(conn, fromAccount, toAccount, amount, "TRANSFER", "FAILED", initiatedBy, "source_account_not_found");
-                        conn.rollback();
-                        return false;
-                    }
-                    fromBal = rs.getBigDecimal(1);
-                }
+            String recorded = idempotencyKey != null ? recordedTransfer(conn, idempotencyKey) : null;
+            if (recorded != null) {
+                conn.commit();
+                auditLogger.afterCommit(conn);
+                IDEMPOTENCY_CACHE.put(idempotencyKey, recorded);
+                return replay(idempotencyKey, recorded, fingerprint);
             }
 
-            if (fromBal.compareTo(new java.math.BigDecimal(String.format("%.2f", amount))) < 0) {
-                // insufficient funds
-                insertTransactionRecord(conn, fromAccount, toAccount, amount, "TRANSFER", "FAILED", initiatedBy, "insufficient_funds");
+            String failure = applyTransfer(conn, fromAccount, toAccount, amount, initiatedBy, mode, idempotencyKey);
+            if (failure != null) {
+                insertTransactionRecord(conn, fromAccount, toAccount, amount, "TRANSFER", "FAILED", initiatedBy, failure, null);
                 conn.rollback();
-                return false;
+                auditLogger.afterRollback(conn);
+                return failure;
             }
 
-            // lock destination
-            java.math.BigDecimal toBal;
-            try (PreparedStatement ps = conn.prepareStatement(selectForUpdate)) {
-                ps.setString(1, toAccount);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) {
-                        insertTransactionRecord(conn, fromAccount, toAccount, amount, "TRANSFER", "FAILED", initiatedBy, "destination_account_not_found");
-                        conn.rollback();
-                        return false;
+            conn.commit();
+            auditLogger.afterCommit(conn);
+            BALANCE_CACHE.invalidateAccounts(fromAccount, toAccount);
+            result = null;
+            if (idempotencyKey != null) IDEMPOTENCY_CACHE.put(idempotencyKey, fingerprint);
+
+        } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+            auditLogger.afterRollback(conn);
+            result = "error";
+            if (idempotencyKey != null && "23505".equals(ex.getSQLState())) {
+                // unique key violation: a concurrent request with the same key committed first
+                try {
+                    String recorded = recordedTransfer(conn, idempotencyKey);
+                    conn.commit();
+                    if (recorded != null) {
+                        IDEMPOTENCY_CACHE.put(idempotencyKey, recorded);
+                        return replay(idempotencyKey, recorded, fingerprint);
                     }
-                    toBal = rs.getBigDecimal(1);
+                } catch (SQLException e2) {
+                    e2.printStackTrace();
                 }
             }
+            ex.printStackTrace();
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {}
+        }
+        return result;
+    }
 
-            // perform updates
-            java.math.BigDecimal newFrom = fromBal.subtract(new java.math.BigDecimal(String.format("%.2f", amount)));
-            java.math.BigDecimal newTo   = toBal.add(new java.math.BigDecimal(String.format("%.2f", amount)));
+    // Same, on a connection borrowed from the pool; false if no connection could be borrowed
+    static boolean transfer(ConnectionPool pool, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                            TransferMode mode) {
+        return transfer(pool, fromAccount, toAccount, amount, initiatedBy, mode, null);
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement(updateBalance)) {
-                ps.setBigDecimal(1, newFrom);
-                ps.setString(2, fromAccount);
-                ps.executeUpdate();
+    // Same, with an idempotency key; a cached duplicate does not borrow a connection at all
+    static boolean transfer(ConnectionPool pool, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                            TransferMode mode, String idempotencyKey) {
+        return transferWithKey(pool, fromAccount, toAccount, amount, initiatedBy, mode, idempotencyKey) == null;
+    }
+
+    // Same, returning null on success, otherwise the failure reason (see above)
+    static String transferWithKey(ConnectionPool pool, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                                  TransferMode mode, String idempotencyKey) {
+        if (idempotencyKey != null && amount != null) {
+            String cached = IDEMPOTENCY_CACHE.get(idempotencyKey);
+            if (cached != null) return replay(idempotencyKey, cached, IdempotencyCache.fingerprint(fromAccount, toAccount, amount));
+        }
+        try (Connection conn = pool.getConnection()) {
+            return transferWithKey(conn, fromAccount, toAccount, amount, initiatedBy, mode, idempotencyKey);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+            return "error";
+        }
+    }
+
+    // Answer to a request whose key already committed: success for a retry of the same
+    // transfer, IDEMPOTENCY_CONFLICT if the key was used for a different one
+    private static String replay(String idempotencyKey, String recorded, String fingerprint) {
+        if (recorded.equals(fingerprint)) return null;
+        System.out.println("Transfer rejected: idempotency key " + idempotencyKey + " was used for a different transfer");
+        return IDEMPOTENCY_CONFLICT;
+    }
+
+    // Fingerprint of the transfer committed with this idempotency key, null if none has
+    private static String recordedTransfer(Connection conn, String idempotencyKey) throws SQLException {
+        String q = "SELECT from_account, to_account, amount FROM transactions WHERE idempotency_key = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            ps.setString(1, idempotencyKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return IdempotencyCache.fingerprint(rs.getString(1), rs.getString(2), Money.fromBigDecimal(rs.getBigDecimal(3)));
             }
+        }
+    }
+
+    // Balance updates plus the SUCCESS ledger row and audit row of one transfer, without
+    // committing. Returns null on success, otherwise the failure reason (nothing recorded).
+    // Caller owns the transaction and must roll back on failure.
+    static String applyTransfer(Connection conn, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                                TransferMode mode) throws SQLException {
+        return applyTransfer(conn, fromAccount, toAccount, amount, initiatedBy, mode, null);
+    }
+
+    // Same, storing idempotencyKey (may be null) on the SUCCESS ledger row
+    static String applyTransfer(Connection conn, String fromAccount, String toAccount, Money amount, long initiatedBy,
+                                TransferMode mode, String idempotencyKey) throws SQLException {
+        if (!amount.isPositive()) return "invalid_amount"; // a negative amount would reverse the transfer
+        String failure;
+        boolean hot = HotAccounts.isHot(fromAccount) || HotAccounts.isHot(toAccount);
+        if (hot) failure = applyHotTransfer(conn, fromAccount, toAccount, amount); // updates user_summary itself
+        else if (mode == TransferMode.CONDITIONAL) failure = applyConditionalTransfer(conn, fromAccount, toAccount, amount);
+        else if (mode == TransferMode.OPTIMISTIC) failure = applyOptimisticTransfer(conn, fromAccount, toAccount, amount);
+        else failure = applyLockedTransfer(conn, fromAccount, toAccount, amount);
+        if (failure != null) return failure;
+        if (!hot) UserSummary.transferred(conn, fromAccount, toAccount, amount, amount);
+
+        // insert transaction success record
+        insertTransactionRecord(conn, fromAccount, toAccount, amount, "TRANSFER", "SUCCESS", initiatedBy, "Internal transfer",
+                idempotencyKey);
+
+        audit(conn, AuditEvent.transfer(initiatedBy, fromAccount, toAccount, amount));
+        return null;
+    }
+
+    // PESSIMISTIC: lock both rows with SELECT ... FOR UPDATE, check in Java, write back.
+    // Both rows are locked in a canonical order (by account_number) rather than
+    // source-then-destination, so opposite-direction transfers (A->B and B->A) never wait
+    // on each other in a cycle.
+    // Returns null on success, otherwise the failure reason. Caller owns the transaction.
+    private static String applyLockedTransfer(Connection conn, String fromAccount, String toAccount, Money amount) throws SQLException {
+        String updateBalance = "UPDATE accounts SET balance = ?, version = version + 1 WHERE account_number = ?";
+        if (fromAccount.equals(toAccount)) return "same_account";
+
+        // lock both rows, lowest account_number first
+        boolean sourceFirst = fromAccount.compareTo(toAccount) < 0;
+        Money firstBal = lockBalance(conn, sourceFirst ? fromAccount : toAccount);
+        Money secondBal = lockBalance(conn, sourceFirst ? toAccount : fromAccount);
+        Money fromBal = sourceFirst ? firstBal : secondBal;
+        Money toBal   = sourceFirst ? secondBal : firstBal;
+
+        if (fromBal == null) return "source_account_not_found";
+        if (fromBal.isLessThan(amount)) return "insufficient_funds";
+        if (toBal == null) return "destination_account_not_found";
+
+        // perform updates
+        try (PreparedStatement ps = conn.prepareStatement(updateBalance)) {
+            ps.setBigDecimal(1, fromBal.minus(amount).toBigDecimal());
+            ps.setString(2, fromAccount);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(updateBalance)) {
+            ps.setBigDecimal(1, toBal.plus(amount).toBigDecimal());
+            ps.setString(2, toAccount);
+            ps.executeUpdate();
+        }
+        return null;
+    }
+
+    // Transfer touching a hot account (any mode): a hot destination is credited on one of its
+    // stripes without locking its main row; a hot source has its stripes folded into the main
+    // row first so the funds check sees the full balance. Rows are still visited in
+    // account_number order.
+    // Returns null on success, otherwise the failure reason. Caller owns the transaction.
+    private static String applyHotTransfer(Connection conn, String fromAccount, String toAccount, Money amount) throws SQLException {
+        String updateBalance = "UPDATE accounts SET balance = ?, version = version + 1 WHERE account_number = ?";
+        if (fromAccount.equals(toAccount)) return "same_account";
+        boolean hotTo = HotAccounts.isHot(toAccount);
+
+        Money fromBal = null;
+        Money toBal = null;
+        Money folded = Money.ZERO;
+        boolean sourceFirst = fromAccount.compareTo(toAccount) < 0;
+        for (String an : sourceFirst ? new String[] {fromAccount, toAccount} : new String[] {toAccount, fromAccount}) {
+            if (an.equals(fromAccount)) {
+                fromBal = lockBalance(conn, fromAccount);
+                if (fromBal != null && HotAccounts.isHot(fromAccount)) {
+                    folded = HotAccounts.foldLocked(conn, fromAccount);
+                    fromBal = fromBal.plus(folded);
+                }
+            } else if (hotTo) {
+                if (!HotAccounts.credit(conn, toAccount, amount)) return "destination_account_not_found";
+            } else {
+                toBal = lockBalance(conn, toAccount);
+            }
+        }
+
+        if (fromBal == null) return "source_account_not_found";
+        if (fromBal.isLessThan(amount)) return "insufficient_funds";
+        if (!hotTo && toBal == null) return "destination_account_not_found";
+
+        try (PreparedStatement ps = conn.prepareStatement(updateBalance)) {
+            ps.setBigDecimal(1, fromBal.minus(amount).toBigDecimal());
+            ps.setString(2, fromAccount);
+            ps.executeUpdate();
+        }
+        if (!hotTo) {
             try (PreparedStatement ps = conn.prepareStatement(updateBalance)) {
-                ps.setBigDecimal(1, newTo);
+                ps.setBigDecimal(1, toBal.plus(amount).toBigDecimal());
                 ps.setString(2, toAccount);
                 ps.executeUpdate();
             }
+        }
+        // main rows: the source gained its folded stripes and lost amount; a hot destination's
+        // credit sits on a stripe until it is folded
+        UserSummary.transferred(conn, fromAccount, toAccount, amount.minus(folded), hotTo ? Money.ZERO : amount);
+        return null;
+    }
+
+    // CONDITIONAL: no SELECT at all on the success path -- a guarded relative debit whose
+    // update count tells us whether funds were sufficient, and a relative credit.
+    // The two UPDATEs run in account_number order, matching the lock order of the
+    // pessimistic path. The failure path does one extra SELECT to report the exact reason.
+    // Returns null on success, otherwise the failure reason. Caller owns the transaction.
+    private static String applyConditionalTransfer(Connection conn, String fromAccount, String toAccount, Money amount) throws SQLException {
+        if (fromAccount.equals(toAccount)) return "same_account";
+        java.math.BigDecimal amt = amount.toBigDecimal();
+        if (fromAccount.compareTo(toAccount) < 0) {
+            if (!debitIfSufficient(conn, fromAccount, amt)) return debitFailureReason(conn, fromAccount);
+            if (!credit(conn, toAccount, amt)) return "destination_account_not_found";
+        } else {
+            if (!credit(conn, toAccount, amt)) return "destination_account_not_found";
+            if (!debitIfSufficient(conn, fromAccount, amt)) return debitFailureReason(conn, fromAccount);
+        }
+        return null;
+    }
+
+    // OPTIMISTIC: read balance+version without locking, then compare-and-set both rows
+    // ("... WHERE account_number = ? AND version = ?"). A zero update count means another
+    // transaction got there first: roll back to the attempt's savepoint, back off with
+    // jitter and retry. After MAX_OPTIMISTIC_ATTEMPTS conflicts the transfer falls back to
+    // the pessimistic path, so hot accounts still make progress.
+    // Returns null on success, otherwise the failure reason. Caller owns the transaction.
+    private static String applyOptimisticTransfer(Connection conn, String fromAccount, String toAccount, Money amount) throws SQLException {
+        if (fromAccount.equals(toAccount)) return "same_account";
+        boolean sourceFirst = fromAccount.compareTo(toAccount) < 0;
+
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+            Object[] from = readVersioned(conn, fromAccount);
+            if (from == null) return "source_account_not_found";
+            Money fromBal = (Money) from[0];
+            if (fromBal.isLessThan(amount)) return "insufficient_funds";
+            Object[] to = readVersioned(conn, toAccount);
+            if (to == null) return "destination_account_not_found";
+            Money toBal = (Money) to[0];
+
+            Savepoint sp = conn.setSavepoint();
+            boolean ok = sourceFirst
+                    ? compareAndSet(conn, fromAccount, fromBal.minus(amount), (Long) from[1])
+                        && compareAndSet(conn, toAccount, toBal.plus(amount), (Long) to[1])
+                    : compareAndSet(conn, toAccount, toBal.plus(amount), (Long) to[1])
+                        && compareAndSet(conn, fromAccount, fromBal.minus(amount), (Long) from[1]);
+            if (ok) {
+                conn.releaseSavepoint(sp);
+                return null;
+            }
+            conn.rollback(sp);
+            backoff(attempt);
+        }
+        return applyLockedTransfer(conn, fromAccount, toAccount, amount);
+    }
+
+    // Unlocked read of {balance, version}, or null if the account does not exist
+    private static Object[] readVersioned(Connection conn, String accountNumber) throws SQLException {
+        String q = "SELECT balance, version FROM accounts WHERE account_number = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Object[] {Money.fromBigDecimal(rs.getBigDecimal(1)), rs.getLong(2)} : null;
+            }
+        }
+    }
+
+    private static boolean compareAndSet(Connection conn, String accountNumber, Money newBalance,
+                                         long expectedVersion) throws SQLException {
+        String sql = "UPDATE accounts SET balance = ?, version = version + 1 WHERE account_number = ? AND version = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, newBalance.toBigDecimal());
+            ps.setString(2, accountNumber);
+            ps.setLong(3, expectedVersion);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    // Full-jitter exponential backoff: sleep a random 0..(1ms << attempt)
+    private static void backoff(int attempt) {
+        long maxMicros = 1000L << Math.min(attempt, 10);
+        long micros = java.util.concurrent.ThreadLocalRandom.current().nextLong(maxMicros + 1);
+        try {
+            Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean debitIfSufficient(Connection conn, String accountNumber, java.math.BigDecimal amt) throws SQLException {
+        String sql = "UPDATE accounts SET balance = balance - ?, version = version + 1 WHERE account_number = ? AND balance >= ? AND status = 'ACTIVE'";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amt);
+            ps.setString(2, accountNumber);
+            ps.setBigDecimal(3, amt);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    private static boolean credit(Connection conn, String accountNumber, java.math.BigDecimal amt) throws SQLException {
+        String sql = "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE account_number = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amt);
+            ps.setString(2, accountNumber);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    // Why did a guarded debit update zero rows?
+    private static String debitFailureReason(Connection conn, String accountNumber) throws SQLException {
+        String q = "SELECT status FROM accounts WHERE account_number = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return "source_account_not_found";
+                if (!"ACTIVE".equals(rs.getString(1))) return "source_account_inactive";
+                return "insufficient_funds";
+            }
+        }
+    }
+
+    // Lock a single account row (SELECT ... FOR UPDATE), returns its balance or null if not found
+    private static Money lockBalance(Connection conn, String accountNumber) throws SQLException {
+        String selectForUpdate = "SELECT balance FROM accounts WHERE account_number = ? FOR UPDATE";
+        try (PreparedStatement ps = conn.prepareStatement(selectForUpdate)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? Money.fromBigDecimal(rs.getBigDecimal(1)) : null;
+            }
+        }
+    }
 
-            // insert transaction success record
-            insertTransactionRecord(conn, fromAccount, toAccount, amount, "TRANSFER", "SUCCESS", initiatedBy, "Internal transfer");
+    // Bulk transfer: validates and applies all requests in ONE transaction.
+    // Every involved account is locked once, in account_number order, balances are tracked
+    // in memory while the requests are applied in submission order, and the balance updates,
+    // ledger rows and audit rows are each written with a single JDBC batch.
+    // Hot accounts follow applyHotTransfer(): one that is debited has its main row locked and
+    // its stripes folded in first, so the funds check sees the full balance; one that is only
+    // credited has its stripes locked at its position instead of its main row and receives
+    // the window's credits as a single stripe credit.
+    // Failed items are recorded in the ledger as FAILED without affecting the others; if the
+    // batch itself fails (SQLException) everything is rolled back and every item is reported
+    // as failed with reason "batch_rolled_back".
+    static List<TransferResult> transferBatch(Connection conn, List<TransferRequest> requests) {
+        String updateBalance = "UPDATE accounts SET balance = ?, version = version + 1 WHERE account_number = ?";
+        String insertTxn = "INSERT INTO transactions (txn_ref, from_account, to_account, amount, txn_type, status, initiated_by, remarks) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        try {
+            conn.setAutoCommit(false); // begin transaction
 
-            audit(conn, initiatedBy, "TRANSFER", "from=" + fromAccount + ";to=" + toAccount + ";amount=" + amount);
+            // lock every involved account once, lowest account_number first
+            SortedSet<String> involved = new TreeSet<>();
+            Set<String> sources = new HashSet<>();
+            for (TransferRequest r : requests) {
+                involved.add(r.fromAccount);
+                involved.add(r.toAccount);
+                sources.add(r.fromAccount);
+            }
+            Map<String, Money> balances = new HashMap<>();
+            Set<String> stripeOnly = new HashSet<>(); // hot accounts that are only credited
+            Map<String, Money> deltas = new HashMap<>(); // user_summary deltas of main rows
+            String selectForUpdate = "SELECT balance FROM accounts WHERE account_number = ? FOR UPDATE";
+            try (PreparedStatement ps = conn.prepareStatement(selectForUpdate)) {
+                for (String an : involved) {
+                    boolean hot = HotAccounts.isHot(an);
+                    if (hot && !sources.contains(an)) {
+                        HotAccounts.lockStripes(conn, an);
+                        stripeOnly.add(an);
+                        continue;
+                    }
+                    ps.setString(1, an);
+                    Money balance;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) continue;
+                        balance = Money.fromBigDecimal(rs.getBigDecimal(1));
+                    }
+                    if (hot) {
+                        Money folded = HotAccounts.foldLocked(conn, an);
+                        balance = balance.plus(folded);
+                        if (folded.isPositive()) deltas.put(an, folded);
+                    }
+                    balances.put(an, balance);
+                }
+            }
+
+            // apply in submission order against the running balances
+            Set<String> touched = new LinkedHashSet<>();
+            Map<String, Money> stripeCredits = new TreeMap<>();
+            for (TransferRequest r : requests) {
+                Money fromBal = balances.get(r.fromAccount);
+                String reason = null;
+                if (!r.amount.isPositive()) reason = "invalid_amount";
+                else if (r.fromAccount.equals(r.toAccount)) reason = "same_account";
+                else if (fromBal == null) reason = "source_account_not_found";
+                else if (fromBal.isLessThan(r.amount)) reason = "insufficient_funds";
+                else if (!balances.containsKey(r.toAccount) && !stripeOnly.contains(r.toAccount)) reason = "destination_account_not_found";
+
+                if (reason == null) {
+                    balances.put(r.fromAccount, fromBal.minus(r.amount));
+                    touched.add(r.fromAccount);
+                    if (stripeOnly.contains(r.toAccount)) {
+                        stripeCredits.merge(r.toAccount, r.amount, Money::plus);
+                    } else {
+                        balances.put(r.toAccount, balances.get(r.toAccount).plus(r.amount));
+                        touched.add(r.toAccount);
+                    }
+                    results.add(new TransferResult(r, true, null));
+                } else {
+                    results.add(new TransferResult(r, false, reason));
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(updateBalance)) {
+                for (String an : touched) {
+                    ps.setBigDecimal(1, balances.get(an).toBigDecimal());
+                    ps.setString(2, an);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            for (Map.Entry<String, Money> e : stripeCredits.entrySet()) {
+                if (!HotAccounts.credit(conn, e.getKey(), e.getValue())) throw new SQLException("No credit stripe for " + e.getKey());
+            }
+            for (TransferResult res : results) {
+                if (!res.success) continue;
+                TransferRequest r = res.request;
+                deltas.merge(r.fromAccount, Money.ZERO.minus(r.amount), Money::plus);
+                // a stripe credit reaches the summary when it is folded
+                deltas.merge(r.toAccount, stripeOnly.contains(r.toAccount) ? Money.ZERO : r.amount, Money::plus);
+            }
+            UserSummary.applyDeltas(conn, deltas);
+            try (PreparedStatement ps = conn.prepareStatement(insertTxn)) {
+                for (TransferResult res : results) {
+                    TransferRequest r = res.request;
+                    bindTransactionRecord(ps, r.fromAccount, r.toAccount, r.amount, "TRANSFER",
+                            res.success ? "SUCCESS" : "FAILED", r.initiatedBy, res.success ? "Internal transfer" : res.reason);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            List<AuditEvent> events = new ArrayList<>();
+            for (TransferResult res : results) {
+                if (!res.success) continue;
+                TransferRequest r = res.request;
+                events.add(AuditEvent.transfer(r.initiatedBy, r.fromAccount, r.toAccount, r.amount));
+            }
+            auditLogger.logAll(conn, events);
 
             conn.commit();
-            success = true;
+            auditLogger.afterCommit(conn);
+            touched.addAll(stripeCredits.keySet());
+            touched.addAll(deltas.keySet()); // folded hot accounts
+            BALANCE_CACHE.invalidateAccounts(touched.toArray(new String[0]));
 
         } catch (SQLException ex) {
             try {
@@ -252,53 +736,72 @@ public class BankApp {
             } catch (SQLException e2) {
                 e2.printStackTrace();
             }
+            auditLogger.afterRollback(conn);
             ex.printStackTrace();
-            success = false;
+            results.clear();
+            for (TransferRequest r : requests) results.add(new TransferResult(r, false, "batch_rolled_back"));
         } finally {
             try {
                 conn.setAutoCommit(true);
             } catch (SQLException ignore) {}
         }
-        return success;
+        return results;
     }
 
     // Helper to insert into transactions table (within same connection/transaction)
-    private static void insertTransactionRecord(Connection conn, String fromAcct, String toAcct, double amount,
-                                                String type, String status, long initiatedBy, String remarks) throws SQLException {
-        String insertTxn = "INSERT INTO transactions (txn_uuid, from_account, to_account, amount, txn_type, status, initiated_by, remarks) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static void insertTransactionRecord(Connection conn, String fromAcct, String toAcct, Money amount,
+                                                String type, String status, long initiatedBy, String remarks,
+                                                String idempotencyKey) throws SQLException {
+        String insertTxn = "INSERT INTO transactions (txn_ref, from_account, to_account, amount, txn_type, status, initiated_by, remarks, idempotency_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
         try (PreparedStatement ps = conn.prepareStatement(insertTxn)) {
-            ps.setString(1, UUID.randomUUID().toString());
-            ps.setString(2, fromAcct);
-            ps.setString(3, toAcct);
-            ps.setBigDecimal(4, new java.math.BigDecimal(String.format("%.2f", amount)));
-            ps.setString(5, type);
-            ps.setString(6, status);
-            ps.setLong(7, initiatedBy);
-            ps.setString(8, remarks);
+            bindTransactionRecord(ps, fromAcct, toAcct, amount, type, status, initiatedBy, remarks);
+            ps.setString(9, idempotencyKey);
             ps.executeUpdate();
         }
     }
 
-    // Audit log insert (simple)
-    private static void audit(Connection conn, Long userId, String action, String meta) throws SQLException {
-        String sql = "INSERT INTO audit_logs (user_id, action, meta) VALUES (?, ?, ?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            if (userId == null) ps.setNull(1, Types.BIGINT);
-            else ps.setLong(1, userId);
-            ps.setString(2, action);
-            ps.setString(3, meta);
-            ps.executeUpdate();
+    // Bind the parameters of the transactions INSERT (shared by single and batched inserts)
+    private static void bindTransactionRecord(PreparedStatement ps, String fromAcct, String toAcct, Money amount,
+                                              String type, String status, long initiatedBy, String remarks) throws SQLException {
+        ps.setLong(1, TXN_IDS.next());
+        ps.setString(2, fromAcct);
+        ps.setString(3, toAcct);
+        ps.setBigDecimal(4, amount.toBigDecimal());
+        ps.setString(5, type);
+        ps.setString(6, status);
+        ps.setLong(7, initiatedBy);
+        ps.setString(8, remarks);
+    }
+
+    // Audit event of the current transaction on conn, written according to the AuditLogger's mode
+    static void audit(Connection conn, AuditEvent event) throws SQLException {
+        auditLogger.log(conn, event);
+    }
+
+    static AuditLogger auditLogger() {
+        return auditLogger;
+    }
+
+    // Route audit() through another logger; the caller closes the previous one once idle
+    static void useAuditLogger(AuditLogger logger) {
+        auditLogger = logger;
+    }
+
+    // Same, on a connection borrowed from the pool (for audit events outside a transaction)
+    static void audit(ConnectionPool pool, AuditEvent event) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            audit(conn, event);
         }
     }
 
     // Print some transactions
     private static void printTransactions(Connection conn) throws SQLException {
-        String q = "SELECT txn_id, txn_uuid, from_account, to_account, amount, txn_type, status, initiated_at FROM transactions ORDER BY initiated_at DESC LIMIT 10";
+        String q = "SELECT txn_id, txn_ref, from_account, to_account, amount, txn_type, status, initiated_at FROM transactions ORDER BY initiated_at DESC LIMIT 10";
         try (PreparedStatement ps = conn.prepareStatement(q); ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                System.out.printf("  txn_id=%d uuid=%s from=%s to=%s amount=%s type=%s status=%s time=%s%n",
+                System.out.printf("  txn_id=%d ref=%d from=%s to=%s amount=%s type=%s status=%s time=%s%n",
                         rs.getLong("txn_id"),
-                        rs.getString("txn_uuid"),
+                        rs.getLong("txn_ref"),
                         rs.getString("from_account"),
                         rs.getString("to_account"),
                         rs.getBigDecimal("amount").toPlainString(),
@@ -311,13 +814,16 @@ public class BankApp {
 
     // Print audit logs
     private static void printAudit(Connection conn) throws SQLException {
-        String q = "SELECT id, user_id, action, meta, created_at FROM audit_logs ORDER BY created_at DESC LIMIT 10";
+        String q = "SELECT id, user_id, action, account_ref, counterparty_ref, amount, meta, created_at FROM audit_logs ORDER BY created_at DESC LIMIT 10";
         try (PreparedStatement ps = conn.prepareStatement(q); ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                System.out.printf("  audit_id=%d user=%s action=%s meta=%s time=%s%n",
+                System.out.printf("  audit_id=%d user=%s action=%s account=%s counterparty=%s amount=%s meta=%s time=%s%n",
                         rs.getLong("id"),
                         rs.getObject("user_id"),
                         rs.getString("action"),
+                        rs.getString("account_ref"),
+                        rs.getString("counterparty_ref"),
+                        rs.getBigDecimal("amount"),
                         rs.getString("meta"),
                         rs.getTimestamp("created_at").toString());
             }
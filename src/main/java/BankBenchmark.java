@@ -0,0 +1,1511 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BankBenchmark.java
+ *
+ * Load tests for the banking backend, run against a throwaway in-memory H2 database
+ * so they never touch ./bankdb.
+ *
+ * Usage:
+ *   java -cp .:h2.jar BankBenchmark stress      opposite-direction transfers, old vs canonical lock order; fails on deadlock
+ *   java -cp .:h2.jar BankBenchmark batch       transfer() one-by-one vs transferBatch(); checks one ledger row per transfer
+ *   java -cp .:h2.jar BankBenchmark modes       transfer() throughput per TransferMode
+ *   java -cp .:h2.jar BankBenchmark engine      in-memory BalanceEngine with write-behind
+ *   java -cp .:h2.jar BankBenchmark sharded     ShardedTransferExecutor at 1..N shards
+ *   java -cp .:h2.jar BankBenchmark hot         inbound credits to one merchant account vs stripes
+ *   java -cp .:h2.jar BankBenchmark netting     transfer() vs CreditNetter for few destinations
+ *   java -cp .:h2.jar BankBenchmark groupcommit transfer() vs GroupCommitCoordinator (file DB)
+ *   java -cp .:h2.jar BankBenchmark money       per-transfer amount handling: double/String.format vs Money
+ *   java -cp .:h2.jar BankBenchmark pool        64 threads over ConnectionPool sizes 4..32, wait + utilization
+ *   java -cp .:h2.jar BankBenchmark stmtcache   pooled transfers with the statement cache off vs on
+ *   java -cp .:h2.jar BankBenchmark http        load client against BankHttpServer, p50/p99/p999 latency
+ *   java -cp .:h2.jar BankBenchmark wire        BankWireServer over loopback at pipeline depth 1..128
+ *   java -cp .:h2.jar BankBenchmark idempotency keyed transfers, then retries answered by cache vs by H2
+ *   java -cp .:h2.jar BankBenchmark txnid       random UUID strings vs TxnIdGenerator: generation + index inserts
+ *   java -cp .:h2.jar BankBenchmark ledger [rows] history/recent query latency before vs after the index migration
+ *   java -cp .:h2.jar BankBenchmark statement   statement page latency at page 1..1000, OFFSET vs keyset
+ *   java -cp .:h2.jar BankBenchmark export [rows] StatementExport CSV/JSONL throughput and peak heap
+ *   java -cp .:h2.jar BankBenchmark audit       pooled transfers per AuditLogger mode (file DB), queue + flush metrics
+ *   java -cp .:h2.jar BankBenchmark journal     audit() row INSERTs vs AuditJournal appends (1 and 4 threads), verify rate
+ *   java -cp .:h2.jar BankBenchmark auditquery [rows] "events touching account X": LIKE over meta vs typed indexed columns
+ *   java -cp .:h2.jar BankBenchmark balancecache 90/10 overview/transfer mix, H2 vs BalanceCache; read-your-writes check
+ *   java -cp .:h2.jar BankBenchmark summary [rows] portfolio totals: aggregate over accounts/transactions vs UserSummary; invariant check
+ *   java -cp .:h2.jar BankBenchmark asof [rows] balance at day 1/15/29 of a 30-day ledger: full replay vs BalanceCheckpoints
+ */
+public class BankBenchmark {
+
+    private static final String DB_USER = "sa";
+    private static final String DB_PASS = "";
+
+    private static final Money ONE = Money.of("1.00");
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "stress";
+        switch (scenario) {
+            case "stress":
+                stress();
+                break;
+            case "batch":
+                batch();
+                break;
+            case "modes":
+                modes();
+                break;
+            case "engine":
+                engine();
+                break;
+            case "sharded":
+                sharded();
+                break;
+            case "hot":
+                hot();
+                break;
+            case "netting":
+                netting();
+                break;
+            case "groupcommit":
+                groupCommit();
+                break;
+            case "money":
+                money();
+                break;
+            case "pool":
+                pool();
+                break;
+            case "stmtcache":
+                stmtCache();
+                break;
+            case "http":
+                http();
+                break;
+            case "wire":
+                wire();
+                break;
+            case "idempotency":
+                idempotency();
+                break;
+            case "txnid":
+                txnId();
+                break;
+            case "ledger":
+                ledger(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            case "statement":
+                statement();
+                break;
+            case "export":
+                export(args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000);
+                break;
+            case "audit":
+                audit();
+                break;
+            case "journal":
+                journal();
+                break;
+            case "auditquery":
+                auditQuery(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+                break;
+            case "balancecache":
+                balanceCache();
+                break;
+            case "summary":
+                summary(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            case "asof":
+                asOf(args.length > 1 ? Integer.parseInt(args[1]) : 3_000_000);
+                break;
+            default:
+                System.out.println("Unknown scenario: " + scenario);
+        }
+    }
+
+    // Fresh in-memory database per scenario, kept alive until the JVM exits
+    private static String memUrl(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    }
+
+    // File database in a temp directory, for scenarios where commit/sync cost matters
+    private static String fileUrl(String name) throws java.io.IOException {
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("bankbench");
+        return "jdbc:h2:" + dir.resolve(name).toAbsolutePath() + ";LOCK_TIMEOUT=10000";
+    }
+
+    // Create one user owning `count` accounts (BENCH0000..), each with the given balance
+    private static List<String> seedAccounts(Connection conn, int count, Money balance) throws SQLException {
+        BankApp.createSchema(conn);
+        long owner = BankApp.createUser(conn, "Bench User", "bench-" + System.nanoTime() + "@example.com", "CUSTOMER");
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String an = String.format("BENCH%04d", i);
+            BankApp.createAccount(conn, owner, an, "SAVINGS", balance);
+            accounts.add(an);
+        }
+        return accounts;
+    }
+
+    // Opposite-direction transfers between a handful of hot accounts at 8/32/128 threads,
+    // first with the old source-then-destination lock order as a baseline, then with the
+    // canonical order. Balances are large enough that every transfer should succeed.
+    // Deadlocks (SQLState 40001) and lock timeouts (HYT00) are counted apart from business
+    // failures; any of them in the canonical order fails the run.
+    private static void stress() throws Exception {
+        String url = memUrl("stress");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 4, Money.of("1000000000.00"));
+        }
+        System.out.println("\norder     | threads | transfers | failed | deadlocks | timeouts | errors | elapsed ms | transfers/s");
+        for (int threads : new int[] {8, 32, 128}) {
+            runStress(url, accounts, threads, 200, false);
+        }
+        long lockFailures = 0;
+        for (int threads : new int[] {8, 32, 128}) {
+            lockFailures += runStress(url, accounts, threads, 200, true);
+        }
+        if (lockFailures > 0) {
+            throw new IllegalStateException(lockFailures + " deadlocks/lock timeouts with the canonical lock order");
+        }
+    }
+
+    // One stress row: `threads` workers doing random transfers, each in its own transaction
+    // so lock errors surface with their SQLState instead of being swallowed by transfer().
+    // The baseline locks source then destination before BankApp.applyTransfer() re-locks
+    // them canonically, so only the acquisition order differs. Returns deadlocks + timeouts.
+    private static long runStress(String url, List<String> accounts, int threads, int transfersPerThread,
+                                  boolean canonical) throws Exception {
+        AtomicLong ok = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong deadlocks = new AtomicLong();
+        AtomicLong timeouts = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                Random rnd = new Random(seed);
+                try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+                    conn.setAutoCommit(false);
+                    start.await();
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        int a = rnd.nextInt(accounts.size());
+                        int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                        String from = accounts.get(a);
+                        String to = accounts.get(b);
+                        try {
+                            if (!canonical) lockInOrder(conn, from, to);
+                            String failure = BankApp.applyTransfer(conn, from, to, ONE, 0, TransferMode.PESSIMISTIC);
+                            if (failure == null) {
+                                conn.commit();
+                                BankApp.auditLogger().afterCommit(conn);
+                                ok.incrementAndGet();
+                            } else {
+                                conn.rollback();
+                                BankApp.auditLogger().afterRollback(conn);
+                                failed.incrementAndGet();
+                            }
+                        } catch (SQLException ex) {
+                            conn.rollback();
+                            BankApp.auditLogger().afterRollback(conn);
+                            if ("40001".equals(ex.getSQLState())) deadlocks.incrementAndGet();
+                            else if ("HYT00".equals(ex.getSQLState())) timeouts.incrementAndGet();
+                            else errors.incrementAndGet();
+                        }
+                    }
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedMs = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+        long total = ok.get() + failed.get() + deadlocks.get() + timeouts.get() + errors.get();
+        System.out.printf("%-9s | %7d | %9d | %6d | %9d | %8d | %6d | %10d | %11.0f%n",
+                canonical ? "canonical" : "baseline", threads, total, failed.get(), deadlocks.get(), timeouts.get(),
+                errors.get(), elapsedMs, total * 1000.0 / elapsedMs);
+        return deadlocks.get() + timeouts.get();
+    }
+
+    // Lock the given account rows in the given order (SELECT ... FOR UPDATE)
+    private static void lockInOrder(Connection conn, String... accountNumbers) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT balance FROM accounts WHERE account_number = ? FOR UPDATE")) {
+            for (String an : accountNumbers) {
+                ps.setString(1, an);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                }
+            }
+        }
+    }
+
+    // Same workload per TransferMode: single-threaded (statement round trips dominate)
+    // and at 32 threads over few accounts (lock hold time dominates)
+    private static void modes() throws Exception {
+        String url = memUrl("modes");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 16, Money.of("1000000000.00"));
+        }
+        for (TransferMode mode : TransferMode.values()) {
+            System.out.println("\n" + mode);
+            System.out.println("threads | transfers | failed | elapsed ms | transfers/s");
+            runConcurrent(url, accounts, 1, 20_000, mode);
+            runConcurrent(url, accounts, 32, 1_000, mode);
+        }
+    }
+
+    // Run `threads` workers, each with its own connection, doing random transfers between
+    // distinct accounts, and print one result row
+    private static void runConcurrent(String url, List<String> accounts, int threads, int transfersPerThread,
+                                      TransferMode mode) throws Exception {
+        AtomicLong ok = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                Random rnd = new Random(seed);
+                try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+                    start.await();
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        int a = rnd.nextInt(accounts.size());
+                        int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                        if (BankApp.transfer(conn, accounts.get(a), accounts.get(b), ONE, 0, mode)) ok.incrementAndGet();
+                        else failed.incrementAndGet();
+                    }
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedMs = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+        long total = ok.get() + failed.get();
+        System.out.printf("%7d | %9d | %6d | %10d | %11.0f%n",
+                threads, total, failed.get(), elapsedMs, total * 1000.0 / elapsedMs);
+    }
+
+    // Payroll-style bulk load: the same transfers applied one commit each vs in batches
+    private static void batch() throws Exception {
+        int transfers = 10_000;
+        try (Connection conn = DriverManager.getConnection(memUrl("batch"), DB_USER, DB_PASS)) {
+            List<String> accounts = seedAccounts(conn, 100, Money.of("1000000000.00"));
+            List<TransferRequest> requests = new ArrayList<>(transfers);
+            Random rnd = new Random(42);
+            for (int i = 0; i < transfers; i++) {
+                int a = rnd.nextInt(accounts.size());
+                int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                requests.add(new TransferRequest(accounts.get(a), accounts.get(b), ONE, 0));
+            }
+
+            long t0 = System.nanoTime();
+            for (TransferRequest r : requests) BankApp.transfer(conn, r.fromAccount, r.toAccount, r.amount, r.initiatedBy);
+            report("transfer() x" + transfers, transfers, System.nanoTime() - t0);
+
+            for (int batchSize : new int[] {100, 1000, 10_000}) {
+                long before = ledgerRows(conn);
+                t0 = System.nanoTime();
+                for (int i = 0; i < transfers; i += batchSize) {
+                    BankApp.transferBatch(conn, requests.subList(i, Math.min(transfers, i + batchSize)));
+                }
+                report("transferBatch(" + batchSize + ")", transfers, System.nanoTime() - t0);
+                checkLedger(conn, "transferBatch(" + batchSize + ")", before, transfers);
+            }
+        }
+    }
+
+    // BalanceEngine: 8 producer threads, then close() to flush everything and check that the
+    // total balance in H2 is unchanged
+    private static void engine() throws Exception {
+        String url = memUrl("engine");
+        java.nio.file.Path journal = java.nio.file.Files.createTempFile("bench-engine", ".journal");
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            List<String> accounts = seedAccounts(conn, 1000, Money.of("1000000.00"));
+            java.math.BigDecimal before = totalBalance(conn);
+
+            int threads = 8;
+            int perThread = 100_000;
+            BalanceEngine engine = new BalanceEngine(conn, journal, 1 << 16);
+            engine.start();
+            CountDownLatch done = new CountDownLatch(threads);
+            long t0 = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                new Thread(() -> {
+                    Random rnd = new Random(seed);
+                    java.util.concurrent.CompletableFuture<TransferResult> last = null;
+                    for (int i = 0; i < perThread; i++) {
+                        int a = rnd.nextInt(accounts.size());
+                        int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                        last = engine.submit(new TransferRequest(accounts.get(a), accounts.get(b), ONE, 0));
+                    }
+                    last.join();
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            report("engine accept+journal", (long) threads * perThread, System.nanoTime() - t0);
+            engine.close();
+            report("engine incl. write-behind", (long) threads * perThread, System.nanoTime() - t0);
+
+            java.math.BigDecimal after = totalBalance(conn);
+            System.out.println("  total balance before=" + before + " after=" + after
+                    + (before.compareTo(after) == 0 ? " (conserved)" : " (MISMATCH)"));
+        } finally {
+            java.nio.file.Files.deleteIfExists(journal);
+        }
+    }
+
+    // ShardedTransferExecutor scaling: the same random workload at 1, 2, 4, .. cores shards
+    private static void sharded() throws Exception {
+        String url = memUrl("sharded");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+        }
+        int transfers = 50_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int shards = 1; shards <= cores; shards *= 2) {
+            try (ShardedTransferExecutor executor = new ShardedTransferExecutor(url, DB_USER, DB_PASS, shards)) {
+                Random rnd = new Random(42);
+                List<java.util.concurrent.CompletableFuture<Boolean>> futures = new ArrayList<>(transfers);
+                long t0 = System.nanoTime();
+                for (int i = 0; i < transfers; i++) {
+                    int a = rnd.nextInt(accounts.size());
+                    int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                    futures.add(executor.submit(accounts.get(a), accounts.get(b), ONE, 0));
+                }
+                long failed = 0;
+                for (java.util.concurrent.CompletableFuture<Boolean> f : futures) if (!f.join()) failed++;
+                report(shards + " shard(s), " + failed + " failed", transfers, System.nanoTime() - t0);
+            }
+        }
+    }
+
+    // 32 threads crediting one merchant account: plain row, then 8 and 32 credit stripes
+    private static void hot() throws Exception {
+        String url = memUrl("hot");
+        List<String> sources;
+        String merchant;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            sources = seedAccounts(conn, 65, Money.of("1000000000.00"));
+            merchant = sources.remove(sources.size() - 1);
+        }
+        int threads = 32;
+        int perThread = 500;
+        for (int stripes : new int[] {0, 8, 32}) {
+            if (stripes > 0) {
+                try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+                    HotAccounts.enable(conn, merchant, stripes);
+                }
+            }
+            CountDownLatch done = new CountDownLatch(threads);
+            long t0 = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final String source = sources.get(t % sources.size());
+                new Thread(() -> {
+                    try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+                        for (int i = 0; i < perThread; i++) BankApp.transfer(conn, source, merchant, ONE, 0);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                }).start();
+            }
+            done.await();
+            report(stripes == 0 ? "no stripes" : stripes + " stripes", (long) threads * perThread, System.nanoTime() - t0);
+        }
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            HotAccounts.foldAll(conn);
+            System.out.println("  total balance after fold: " + totalBalance(conn));
+        }
+    }
+
+    // 32 threads paying into 4 destination accounts: direct transfer() vs a 5 ms CreditNetter
+    private static void netting() throws Exception {
+        String url = memUrl("netting");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 132, Money.of("1000000000.00"));
+        }
+        List<String> destinations = accounts.subList(0, 4);
+        List<String> sources = accounts.subList(4, accounts.size());
+        int threads = 32;
+        int perThread = 500;
+
+        CountDownLatch done = new CountDownLatch(threads);
+        long t0 = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                Random rnd = new Random(seed);
+                try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+                    for (int i = 0; i < perThread; i++) {
+                        BankApp.transfer(conn, sources.get(rnd.nextInt(sources.size())),
+                                destinations.get(rnd.nextInt(destinations.size())), ONE, 0);
+                    }
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        report("transfer()", (long) threads * perThread, System.nanoTime() - t0);
+
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS);
+             CreditNetter netter = new CreditNetter(conn, 5, 10_000)) {
+            CountDownLatch netted = new CountDownLatch(threads);
+            long before = ledgerRows(conn);
+            t0 = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                new Thread(() -> {
+                    Random rnd = new Random(seed);
+                    java.util.concurrent.CompletableFuture<TransferResult> last = null;
+                    for (int i = 0; i < perThread; i++) {
+                        last = netter.submit(sources.get(rnd.nextInt(sources.size())),
+                                destinations.get(rnd.nextInt(destinations.size())), ONE, 0);
+                    }
+                    last.join();
+                    netted.countDown();
+                }).start();
+            }
+            netted.await();
+            report("CreditNetter(5 ms)", (long) threads * perThread, System.nanoTime() - t0);
+            System.out.printf("  windows=%d avg window=%.1f destination updates=%d (vs %d transfers)%n",
+                    netter.windows(), netter.averageWindowSize(), netter.destinationUpdates(), netter.transfers());
+            // each thread's last transfer completed, and windows are applied in order
+            checkLedger(conn, "CreditNetter", before, (long) threads * perThread);
+        }
+    }
+
+    // 32 threads: one commit per transfer() vs shared commit epochs
+    private static void groupCommit() throws Exception {
+        String url = fileUrl("groupcommit");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+        }
+        int threads = 32;
+        int perThread = 500;
+
+        System.out.println("threads | transfers | failed | elapsed ms | transfers/s");
+        runConcurrent(url, accounts, threads, perThread, TransferMode.PESSIMISTIC);
+
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS);
+             GroupCommitCoordinator coordinator = new GroupCommitCoordinator(conn, 500, 256)) {
+            CountDownLatch done = new CountDownLatch(threads);
+            long t0 = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                new Thread(() -> {
+                    Random rnd = new Random(seed);
+                    for (int i = 0; i < perThread; i++) {
+                        int a = rnd.nextInt(accounts.size());
+                        int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                        coordinator.transfer(accounts.get(a), accounts.get(b), ONE, 0);
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            report("group commit (500 us / 256)", (long) threads * perThread, System.nanoTime() - t0);
+            System.out.printf("  epochs=%d avg batch=%.1f avg commit=%.0f us%n",
+                    coordinator.epochs(), coordinator.averageBatchSize(), coordinator.averageCommitMicros());
+        }
+    }
+
+    // Pool sizing: 64 client threads doing transfers through pools of 4, 8, 16 and 32 connections
+    private static void pool() throws Exception {
+        String url = memUrl("pool");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+        }
+        int threads = 64;
+        int perThread = 200;
+        for (int size : new int[] {4, 8, 16, 32}) {
+            try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, size, 30_000, 60_000, 30_000)) {
+                CountDownLatch done = new CountDownLatch(threads);
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    final int seed = t;
+                    new Thread(() -> {
+                        Random rnd = new Random(seed);
+                        for (int i = 0; i < perThread; i++) {
+                            int a = rnd.nextInt(accounts.size());
+                            int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                            BankApp.transfer(pool, accounts.get(a), accounts.get(b), ONE, 0, TransferMode.PESSIMISTIC);
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                report("pool size " + size, (long) threads * perThread, System.nanoTime() - t0);
+                System.out.println("    " + pool.stats());
+            }
+        }
+    }
+
+    // Prepared statement reuse: 8 threads doing transfers through an 8-connection pool with
+    // the per-connection statement cache disabled vs 64 statements per connection
+    private static void stmtCache() throws Exception {
+        String url = memUrl("stmtcache");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+        }
+        int threads = 8;
+        int perThread = 2000;
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            for (int cacheSize : new int[] {0, 64}) {
+                try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, threads, 30_000, 60_000, 30_000, cacheSize)) {
+                    CountDownLatch done = new CountDownLatch(threads);
+                    long t0 = System.nanoTime();
+                    for (int t = 0; t < threads; t++) {
+                        final int seed = t;
+                        new Thread(() -> {
+                            Random rnd = new Random(seed);
+                            for (int i = 0; i < perThread; i++) {
+                                int a = rnd.nextInt(accounts.size());
+                                int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                                BankApp.transfer(pool, accounts.get(a), accounts.get(b), ONE, 0, TransferMode.PESSIMISTIC);
+                            }
+                            done.countDown();
+                        }).start();
+                    }
+                    done.await();
+                    if (round == 1) {
+                        report("statement cache " + cacheSize, (long) threads * perThread, System.nanoTime() - t0);
+                        System.out.printf("    hits=%d misses=%d hit ratio=%.1f%%%n", pool.statementCacheHits(),
+                                pool.statementCacheMisses(), pool.statementCacheHitRatio() * 100);
+                    }
+                }
+            }
+        }
+    }
+
+    // HTTP load: 100/1000 concurrent clients (one virtual thread each where available) posting
+    // transfers to an embedded BankHttpServer over a 16-connection pool; latency percentiles
+    // are per request, measured at the client
+    private static void http() throws Exception {
+        String url = memUrl("http");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+        }
+        int perClient = 20;
+        try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, 16, 30_000, 60_000, 30_000);
+             BankHttpServer server = new BankHttpServer(pool, 0)) {
+            java.net.URL endpoint = new java.net.URL("http://localhost:" + server.port() + "/transfers");
+            for (int clients : new int[] {100, 100, 1000}) { // first run is warm-up
+                long[] latencies = new long[clients * perClient];
+                AtomicInteger next = new AtomicInteger();
+                AtomicInteger failures = new AtomicInteger();
+                ExecutorService executor = BankHttpServer.newPerTaskExecutor();
+                CountDownLatch done = new CountDownLatch(clients);
+                long t0 = System.nanoTime();
+                for (int c = 0; c < clients; c++) {
+                    final int seed = c;
+                    executor.execute(() -> {
+                        Random rnd = new Random(seed);
+                        for (int i = 0; i < perClient; i++) {
+                            int a = rnd.nextInt(accounts.size());
+                            int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                            String form = "from=" + accounts.get(a) + "&to=" + accounts.get(b) + "&amount=1.00&initiatedBy=0";
+                            long start = System.nanoTime();
+                            int status;
+                            try {
+                                status = post(endpoint, form);
+                            } catch (java.io.IOException ex) {
+                                status = -1;
+                            }
+                            latencies[next.getAndIncrement()] = System.nanoTime() - start;
+                            if (status != 200) failures.incrementAndGet();
+                        }
+                        done.countDown();
+                    });
+                }
+                done.await();
+                long elapsed = System.nanoTime() - t0;
+                executor.shutdown();
+                Arrays.sort(latencies);
+                report(clients + " clients", latencies.length, elapsed);
+                System.out.printf("    p50=%.2f ms p99=%.2f ms p999=%.2f ms max=%.2f ms failures=%d%n",
+                        percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                        latencies[latencies.length - 1] / 1e6, failures.get());
+                System.out.println("    " + pool.stats());
+            }
+        }
+    }
+
+    // Binary protocol over loopback: 4 connections, each keeping `depth` transfers in flight
+    private static void wire() throws Exception {
+        String url = memUrl("wire");
+        List<String> accounts;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+        }
+        int connections = 4;
+        int perConnection = 5000;
+        try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, 16, 30_000, 60_000, 30_000);
+             BankWireServer server = new BankWireServer(pool, 0, 16)) {
+            for (int depth : new int[] {1, 1, 16, 128}) { // first run is warm-up
+                AtomicInteger failures = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(connections);
+                long t0 = System.nanoTime();
+                for (int c = 0; c < connections; c++) {
+                    final int seed = c;
+                    new Thread(() -> {
+                        Random rnd = new Random(seed);
+                        java.util.concurrent.Semaphore window = new java.util.concurrent.Semaphore(depth);
+                        try (BankWireClient client = new BankWireClient("localhost", server.port())) {
+                            for (int i = 0; i < perConnection; i++) {
+                                int a = rnd.nextInt(accounts.size());
+                                int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                                window.acquireUninterruptibly();
+                                client.transfer(accounts.get(a), accounts.get(b), ONE, 0, TransferMode.PESSIMISTIC)
+                                        .whenComplete((ok, ex) -> {
+                                            if (ex != null || !ok) failures.incrementAndGet();
+                                            window.release();
+                                        });
+                            }
+                            window.acquireUninterruptibly(depth); // all responses in
+                        } catch (java.io.IOException ex) {
+                            ex.printStackTrace();
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                report("pipeline depth " + depth, (long) connections * perConnection, System.nanoTime() - t0);
+                System.out.println("    failures=" + failures.get());
+            }
+        }
+    }
+
+    // Idempotent retries: 5000 keyed transfers, then the same 5000 submitted again, answered
+    // from IdempotencyCache and (cache cleared) from the unique idempotency_key column.
+    // Checks that no retry moved money.
+    private static void idempotency() throws Exception {
+        String url = memUrl("idempotency");
+        int n = 5000;
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            List<String> accounts = seedAccounts(conn, 100, Money.of("1000000.00"));
+            String[] keys = new String[n];
+            for (int i = 0; i < n; i++) keys[i] = java.util.UUID.randomUUID().toString();
+            BankApp.IDEMPOTENCY_CACHE.clear();
+
+            for (String label : new String[] {"first submission", "retry, cached", "retry, from H2"}) {
+                if (label.equals("retry, from H2")) BankApp.IDEMPOTENCY_CACHE.clear();
+                Random rnd = new Random(42);
+                int succeeded = 0;
+                long t0 = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    int a = rnd.nextInt(accounts.size());
+                    int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                    if (BankApp.transfer(conn, accounts.get(a), accounts.get(b), ONE, 0, TransferMode.PESSIMISTIC, keys[i])) {
+                        succeeded++;
+                    }
+                }
+                long elapsed = System.nanoTime() - t0;
+                report(label, n, elapsed);
+                System.out.printf("    %.1f us/op succeeded=%d%n", elapsed / 1000.0 / n, succeeded);
+            }
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM transactions WHERE status = 'SUCCESS'")) {
+                rs.next();
+                System.out.println("  ledger rows=" + rs.getLong(1) + " (expected " + n + "), cache hits="
+                        + BankApp.IDEMPOTENCY_CACHE.hits() + " total=" + totalBalance(conn));
+            }
+        }
+    }
+
+    // Transaction IDs: generation cost of UUID.randomUUID().toString() vs TxnIdGenerator.next()
+    // (1 and 8 threads), then insert rate of 500k rows into a file-DB table keyed by each
+    private static void txnId() throws Exception {
+        TxnIdGenerator ids = new TxnIdGenerator(1);
+        int ops = 1_000_000;
+        for (int threads : new int[] {1, 1, 8}) { // first run is warm-up
+            for (String scheme : new String[] {"uuid", "txn_ref"}) {
+                AtomicLong sink = new AtomicLong();
+                CountDownLatch done = new CountDownLatch(threads);
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    new Thread(() -> {
+                        long h = 0;
+                        for (int i = 0; i < ops / threads; i++) {
+                            h += scheme.equals("uuid") ? java.util.UUID.randomUUID().toString().hashCode() : ids.next();
+                        }
+                        sink.addAndGet(h);
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                long elapsed = System.nanoTime() - t0;
+                report(scheme + " x" + threads + " threads", ops, elapsed);
+            }
+        }
+
+        int rows = 500_000;
+        for (String scheme : new String[] {"uuid", "txn_ref"}) {
+            try (Connection conn = DriverManager.getConnection(fileUrl("txnid_" + scheme), DB_USER, DB_PASS)) {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate(scheme.equals("uuid")
+                            ? "CREATE TABLE ids (id VARCHAR(36) PRIMARY KEY, payload BIGINT)"
+                            : "CREATE TABLE ids (id BIGINT PRIMARY KEY, payload BIGINT)");
+                }
+                conn.setAutoCommit(false);
+                long t0 = System.nanoTime();
+                try (PreparedStatement ps = conn.prepareStatement("INSERT INTO ids (id, payload) VALUES (?, ?)")) {
+                    for (int i = 0; i < rows; i++) {
+                        if (scheme.equals("uuid")) ps.setString(1, java.util.UUID.randomUUID().toString());
+                        else ps.setLong(1, ids.next());
+                        ps.setLong(2, i);
+                        ps.addBatch();
+                        if ((i + 1) % 1000 == 0) {
+                            ps.executeBatch();
+                            conn.commit();
+                        }
+                    }
+                }
+                report(scheme + " index inserts", rows, System.nanoTime() - t0);
+            }
+        }
+    }
+
+    // Ledger queries at scale: load `rows` transactions and audit rows (10k accounts) into a
+    // file database at schema version 5, time the history/recent queries, apply migration 6
+    // (indexes) and time them again. Run with 1000000 and 10000000.
+    private static void ledger(int rows) throws Exception {
+        try (Connection conn = DriverManager.getConnection(fileUrl("ledger"), DB_USER, DB_PASS)) {
+            SchemaMigrations.migrate(conn, 5);
+            long t0 = System.nanoTime();
+            loadLedger(conn, rows, 10000);
+            report("load " + rows + " rows", rows, System.nanoTime() - t0);
+
+            ledgerQueries(conn, "no indexes", 5);
+            t0 = System.nanoTime();
+            SchemaMigrations.migrate(conn, 6);
+            System.out.printf("  migration 6 (indexes) took %.1f s%n", (System.nanoTime() - t0) / 1e9);
+            ledgerQueries(conn, "indexed", 1000);
+        }
+    }
+
+    // Bulk-load `rows` SUCCESS transfers between accounts ACCT000000.. (one per second from
+    // 2024-01-01) and as many audit rows, in chunks of 1M
+    private static void loadLedger(Connection conn, int rows, int accountCount) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (long lo = 1; lo <= rows; lo += 1_000_000) {
+                long hi = Math.min(rows, lo + 999_999);
+                st.executeUpdate("INSERT INTO transactions (txn_ref, from_account, to_account, amount, txn_type, status, initiated_by, initiated_at, remarks)"
+                        + " SELECT X, 'ACCT' || LPAD(CAST(MOD(X, " + accountCount + ") AS VARCHAR), 6, '0'),"
+                        + " 'ACCT' || LPAD(CAST(MOD(X * 7 + 1, " + accountCount + ") AS VARCHAR), 6, '0'), 1.00, 'TRANSFER', 'SUCCESS', 0,"
+                        + " DATEADD('SECOND', X, TIMESTAMP '2024-01-01 00:00:00'), 'Internal transfer'"
+                        + " FROM SYSTEM_RANGE(" + lo + ", " + hi + ")");
+                st.executeUpdate("INSERT INTO audit_logs (user_id, action, meta, created_at)"
+                        + " SELECT 0, 'TRANSFER', 'bench', DATEADD('SECOND', X, TIMESTAMP '2024-01-01 00:00:00')"
+                        + " FROM SYSTEM_RANGE(" + lo + ", " + hi + ")");
+            }
+        }
+    }
+
+    // Deep statement pages: 1M ledger rows over 100 accounts (~20k lines each), 20 lines per
+    // page. Latency of pages 1/10/100/1000 with LIMIT/OFFSET vs AccountStatement keyset
+    // cursors (walking there page by page), averaged over 5 accounts.
+    private static void statement() throws Exception {
+        int pageSize = 20;
+        int[] targets = {1, 10, 100, 1000};
+        String[] sample = {"ACCT000003", "ACCT000017", "ACCT000042", "ACCT000068", "ACCT000091"};
+        try (Connection conn = DriverManager.getConnection(fileUrl("statement"), DB_USER, DB_PASS)) {
+            SchemaMigrations.migrate(conn);
+            loadLedger(conn, 1_000_000, 100);
+
+            String offsetSql = "SELECT txn_id, txn_ref, initiated_at, from_account, to_account, amount FROM transactions"
+                    + " WHERE (from_account = ? OR to_account = ?) AND status = 'SUCCESS'"
+                    + " ORDER BY initiated_at DESC, txn_id DESC LIMIT ? OFFSET ?";
+            for (int round = 0; round < 2; round++) { // first round is warm-up
+                long[] offsetNanos = new long[targets.length];
+                long[] keysetNanos = new long[targets.length];
+                try (PreparedStatement ps = conn.prepareStatement(offsetSql)) {
+                    for (String account : sample) {
+                        for (int t = 0; t < targets.length; t++) {
+                            ps.setString(1, account);
+                            ps.setString(2, account);
+                            ps.setInt(3, pageSize);
+                            ps.setInt(4, (targets[t] - 1) * pageSize);
+                            long t0 = System.nanoTime();
+                            try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                    // drain
+                                }
+                            }
+                            offsetNanos[t] += System.nanoTime() - t0;
+                        }
+                    }
+                }
+                for (String account : sample) {
+                    String cursor = null;
+                    int t = 0;
+                    for (int page = 1; page <= targets[targets.length - 1]; page++) {
+                        long t0 = System.nanoTime();
+                        AccountStatement.Page p = AccountStatement.page(conn, account, cursor, pageSize);
+                        long elapsed = System.nanoTime() - t0;
+                        if (page == targets[t]) {
+                            keysetNanos[t] += elapsed;
+                            t++;
+                        }
+                        cursor = p.olderCursor;
+                        if (cursor == null) break;
+                    }
+                }
+                if (round == 1) {
+                    for (int t = 0; t < targets.length; t++) {
+                        System.out.printf("  page %-5d OFFSET %9.3f ms   keyset %7.3f ms%n", targets[t],
+                                offsetNanos[t] / 1e6 / sample.length, keysetNanos[t] / 1e6 / sample.length);
+                    }
+                }
+            }
+            // the seek must show up as an index range on initiated_at, not just the account prefix
+            System.out.println("  plan of an older page:");
+            System.out.println(AccountStatement.explainOlderPage(conn, sample[0], Timestamp.valueOf("2024-01-06 00:00:00"), 500_000, pageSize));
+        }
+    }
+
+    // Streaming export of a `rows`-row ledger to a temp file as CSV and JSON Lines; reports
+    // rows/s, MB/s and peak heap above the post-GC baseline (sampled every 5 ms)
+    private static void export(int rows) throws Exception {
+        try (Connection conn = DriverManager.getConnection(fileUrl("export"), DB_USER, DB_PASS)) {
+            SchemaMigrations.migrate(conn);
+            loadLedger(conn, rows, 10000);
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("bankexport", ".out");
+            java.lang.management.MemoryMXBean memory = java.lang.management.ManagementFactory.getMemoryMXBean();
+            for (StatementExport.Format format : StatementExport.Format.values()) {
+                System.gc();
+                long baseline = memory.getHeapMemoryUsage().getUsed();
+                AtomicLong peak = new AtomicLong(baseline);
+                java.util.concurrent.atomic.AtomicBoolean running = new java.util.concurrent.atomic.AtomicBoolean(true);
+                Thread sampler = new Thread(() -> {
+                    while (running.get()) {
+                        peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                });
+                sampler.start();
+                long t0 = System.nanoTime();
+                long exported;
+                try (java.nio.channels.FileChannel out = java.nio.channels.FileChannel.open(file,
+                        java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+                    exported = StatementExport.export(conn, format, out);
+                }
+                long elapsed = System.nanoTime() - t0;
+                running.set(false);
+                sampler.join();
+                report(format + " export", exported, elapsed);
+                System.out.printf("    %.1f MB at %.1f MB/s, peak heap +%.1f MB%n", java.nio.file.Files.size(file) / 1e6,
+                        java.nio.file.Files.size(file) / 1e6 / (elapsed / 1e9), (peak.get() - baseline) / 1e6);
+            }
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    // 16 threads of pooled transfers with audit() in each AuditLogger mode, fresh file DB per
+    // mode; after close() every successful transfer must have exactly one TRANSFER audit record
+    private static void audit() throws Exception {
+        int threads = 16;
+        int perThread = 1000;
+        for (AuditLogger.Mode mode : AuditLogger.Mode.values()) {
+            String url = fileUrl("audit");
+            List<String> accounts;
+            try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+                accounts = seedAccounts(conn, 1000, Money.of("1000000000.00"));
+            }
+            AuditJournal journal = null;
+            AuditLogger logger;
+            if (mode == AuditLogger.Mode.SYNC) {
+                logger = AuditLogger.sync();
+            } else if (mode == AuditLogger.Mode.JOURNAL) {
+                journal = new AuditJournal(java.nio.file.Files.createTempDirectory("bankjournal"));
+                logger = new AuditLogger(journal);
+            } else {
+                logger = new AuditLogger(mode, url, DB_USER, DB_PASS, 10_000, 500);
+            }
+            BankApp.useAuditLogger(logger);
+            try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, threads, 30_000, 60_000, 30_000)) {
+                AtomicInteger ok = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(threads);
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    final int seed = t;
+                    new Thread(() -> {
+                        Random rnd = new Random(seed);
+                        for (int i = 0; i < perThread; i++) {
+                            int a = rnd.nextInt(accounts.size());
+                            int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                            if (BankApp.transfer(pool, accounts.get(a), accounts.get(b), ONE, 0, TransferMode.PESSIMISTIC)) {
+                                ok.incrementAndGet();
+                            }
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                report("audit " + mode, (long) threads * perThread, System.nanoTime() - t0);
+                logger.close();
+                System.out.println("    " + logger.stats());
+                try (Connection conn = pool.getConnection(); Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM audit_logs WHERE action = 'TRANSFER'")) {
+                    rs.next();
+                    long audited = journal != null ? journal.lastSeq() : rs.getLong(1);
+                    System.out.printf("    successful transfers=%d TRANSFER audit records=%d%n", ok.get(), audited);
+                }
+            } finally {
+                BankApp.useAuditLogger(AuditLogger.sync());
+            }
+        }
+    }
+
+    // Audit write rate: row-by-row audit() INSERTs (SYNC, auto-commit, file DB) against appends
+    // to a hash-chained AuditJournal from 1 and 4 threads; then a full verify() of the journal
+    private static void journal() throws Exception {
+        int rows = 100_000;
+        try (Connection conn = DriverManager.getConnection(fileUrl("journal"), DB_USER, DB_PASS)) {
+            SchemaMigrations.migrate(conn);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                BankApp.audit(conn, AuditEvent.transfer(0, "ACCT000001", "ACCT000002", ONE));
+            }
+            report("audit_logs INSERT", rows, System.nanoTime() - t0);
+        }
+
+        int events = 5_000_000;
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("bankjournal");
+        try (AuditJournal journal = new AuditJournal(dir)) {
+            for (int threads : new int[] {1, 4}) {
+                int perThread = events / threads;
+                CountDownLatch done = new CountDownLatch(threads);
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    new Thread(() -> {
+                        AuditEvent e = AuditEvent.transfer(0, "ACCT000001", "ACCT000002", ONE);
+                        try {
+                            for (int i = 0; i < perThread; i++) journal.append(e);
+                        } catch (java.io.IOException ex) {
+                            ex.printStackTrace();
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                report("journal append x" + threads, (long) perThread * threads, System.nanoTime() - t0);
+            }
+        }
+        long t0 = System.nanoTime();
+        AuditJournal.Verification v = AuditJournal.verify(dir);
+        report("journal verify", v.records, System.nanoTime() - t0);
+        System.out.println("    " + v);
+    }
+
+    // "Audit events touching account X" on `rows` audit rows (10k accounts, one event per
+    // second up to now, so the last day holds 86400): LIKE over meta at schema version 7,
+    // then migration 8 (typed columns, backfill, indexes) and AuditTrail.forAccount()
+    private static void auditQuery(int rows) throws Exception {
+        int accountCount = 10000;
+        int iterations = 20;
+        try (Connection conn = DriverManager.getConnection(fileUrl("auditquery"), DB_USER, DB_PASS)) {
+            SchemaMigrations.migrate(conn, 7);
+            long t0 = System.nanoTime();
+            try (Statement st = conn.createStatement()) {
+                for (long lo = 1; lo <= rows; lo += 1_000_000) {
+                    long hi = Math.min(rows, lo + 999_999);
+                    st.executeUpdate("INSERT INTO audit_logs (user_id, action, meta, created_at)"
+                            + " SELECT 0, 'TRANSFER', 'from=ACCT' || LPAD(CAST(MOD(X, " + accountCount + ") AS VARCHAR), 6, '0')"
+                            + " || ';to=ACCT' || LPAD(CAST(MOD(X * 7 + 1, " + accountCount + ") AS VARCHAR), 6, '0') || ';amount=1.00',"
+                            + " DATEADD('SECOND', X - " + rows + ", CURRENT_TIMESTAMP)"
+                            + " FROM SYSTEM_RANGE(" + lo + ", " + hi + ")");
+                }
+            }
+            report("load " + rows + " audit rows", rows, System.nanoTime() - t0);
+
+            Timestamp dayAgo = new Timestamp(System.currentTimeMillis() - 24 * 60 * 60 * 1000L);
+            Timestamp ever = new Timestamp(0);
+            Random rnd = new Random(11);
+            String like = "SELECT id, action, meta, created_at FROM audit_logs WHERE created_at >= ?"
+                    + " AND (meta LIKE ? OR meta LIKE ?) ORDER BY created_at DESC LIMIT 100";
+            try (PreparedStatement ps = conn.prepareStatement(like)) {
+                for (Timestamp since : new Timestamp[] {dayAgo, ever}) {
+                    t0 = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        String account = String.format("ACCT%06d", rnd.nextInt(accountCount));
+                        ps.setTimestamp(1, since);
+                        ps.setString(2, "%from=" + account + ";%");
+                        ps.setString(3, "%to=" + account + ";%");
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                // drain
+                            }
+                        }
+                    }
+                    System.out.printf("  %-34s %10.3f ms/query%n", "meta LIKE, " + (since == ever ? "all time" : "last day"),
+                            (System.nanoTime() - t0) / 1e6 / iterations);
+                }
+            }
+
+            t0 = System.nanoTime();
+            SchemaMigrations.migrate(conn, 8);
+            System.out.printf("  migration 8 (typed columns) took %.1f s%n", (System.nanoTime() - t0) / 1e9);
+
+            for (Timestamp since : new Timestamp[] {dayAgo, ever}) {
+                t0 = System.nanoTime();
+                int found = 0;
+                for (int i = 0; i < iterations * 50; i++) {
+                    found += AuditTrail.forAccount(conn, String.format("ACCT%06d", rnd.nextInt(accountCount)), since, 100).size();
+                }
+                System.out.printf("  %-34s %10.3f ms/query (%.1f events)%n", "AuditTrail.forAccount, " + (since == ever ? "all time" : "last day"),
+                        (System.nanoTime() - t0) / 1e6 / (iterations * 50), found / (double) (iterations * 50));
+            }
+        }
+    }
+
+    // 1000 users with 2 accounts each; 16 threads doing 90% account overviews of random users
+    // and 10% transfers, overviews read straight from H2 vs through BankApp.BALANCE_CACHE.
+    // Then, single-threaded, every overview right after a transfer must show its debit.
+    private static void balanceCache() throws Exception {
+        String url = memUrl("balancecache");
+        int users = 1000;
+        List<Long> userIds = new ArrayList<>();
+        List<String> accounts = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            BankApp.createSchema(conn);
+            for (int u = 0; u < users; u++) {
+                long id = BankApp.createUser(conn, "Cache User " + u, "cache-" + u + "@example.com", "CUSTOMER");
+                userIds.add(id);
+                for (int k = 0; k < 2; k++) {
+                    String an = String.format("CACHE%04d%d", u, k);
+                    BankApp.createAccount(conn, id, an, "SAVINGS", Money.of("1000000.00"));
+                    accounts.add(an);
+                }
+            }
+        }
+        int threads = 16;
+        int perThread = 20_000;
+        try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, threads, 30_000, 60_000, 30_000)) {
+            for (int round = 0; round < 3; round++) { // first round is warm-up
+                boolean cached = round == 2;
+                CountDownLatch done = new CountDownLatch(threads);
+                long t0 = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    final int seed = t;
+                    new Thread(() -> {
+                        Random rnd = new Random(seed);
+                        try {
+                            for (int i = 0; i < perThread; i++) {
+                                if (rnd.nextInt(10) == 0) {
+                                    int a = rnd.nextInt(accounts.size());
+                                    int b = (a + 1 + rnd.nextInt(accounts.size() - 1)) % accounts.size();
+                                    BankApp.transfer(pool, accounts.get(a), accounts.get(b), ONE, 0, TransferMode.PESSIMISTIC);
+                                } else if (cached) {
+                                    BankApp.BALANCE_CACHE.overview(pool, userIds.get(rnd.nextInt(users)));
+                                } else {
+                                    try (Connection conn = pool.getConnection();
+                                         PreparedStatement ps = conn.prepareStatement(BankApp.ACCOUNT_OVERVIEW_SQL)) {
+                                        ps.setLong(1, userIds.get(rnd.nextInt(users)));
+                                        try (ResultSet rs = ps.executeQuery()) {
+                                            while (rs.next()) {
+                                                // drain
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        } catch (SQLException ex) {
+                            ex.printStackTrace();
+                        }
+                        done.countDown();
+                    }).start();
+                }
+                done.await();
+                if (round > 0) report(cached ? "overview via BalanceCache" : "overview from H2", (long) threads * perThread, System.nanoTime() - t0);
+            }
+            System.out.println("    " + BankApp.BALANCE_CACHE.stats());
+
+            int violations = 0;
+            Random rnd = new Random(99);
+            for (int i = 0; i < 1000; i++) {
+                int u = rnd.nextInt(users);
+                String from = accounts.get(2 * u);
+                Money before = BankApp.BALANCE_CACHE.overview(pool, userIds.get(u)).get(0).balance;
+                BankApp.transfer(pool, from, accounts.get((2 * u + 2) % accounts.size()), ONE, userIds.get(u), TransferMode.PESSIMISTIC);
+                Money after = BankApp.BALANCE_CACHE.overview(pool, userIds.get(u)).get(0).balance;
+                if (!after.equals(before.minus(ONE))) violations++;
+            }
+            System.out.println("  read-your-writes violations: " + violations + " / 1000");
+        }
+    }
+
+    // Portfolio totals for 100 users with 50 accounts each and `rows` ledger rows between
+    // them: the aggregate query the dashboard would otherwise run vs UserSummary.get(). Then
+    // concurrent transfer(), transferBatch() and hot-account credits, checking afterwards
+    // that every user_summary row matches COUNT/SUM over the user's accounts.
+    private static void summary(int rows) throws Exception {
+        String url = memUrl("summary");
+        int users = 100;
+        int perUser = 50;
+        List<Long> userIds = new ArrayList<>();
+        List<String> accounts = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(url, DB_USER, DB_PASS)) {
+            BankApp.createSchema(conn);
+            for (int u = 0; u < users; u++) {
+                long id = BankApp.createUser(conn, "Summary User " + u, "summary-" + u + "@example.com", "CUSTOMER");
+                userIds.add(id);
+                for (int k = 0; k < perUser; k++) {
+                    String an = String.format("ACCT%06d", u * perUser + k);
+                    BankApp.createAccount(conn, id, an, "SAVINGS", Money.of("1000000.00"));
+                    accounts.add(an);
+                }
+            }
+            long t0 = System.nanoTime();
+            loadLedger(conn, rows, accounts.size());
+            report("load " + rows + " rows", rows, System.nanoTime() - t0);
+
+            String aggregate = "SELECT COUNT(*), SUM(a.balance), (SELECT MAX(t.initiated_at) FROM transactions t"
+                    + " WHERE t.status = 'SUCCESS' AND (t.from_account IN (SELECT account_number FROM accounts WHERE user_id = ?)"
+                    + " OR t.to_account IN (SELECT account_number FROM accounts WHERE user_id = ?)))"
+                    + " FROM accounts a WHERE a.user_id = ?";
+            int iterations = 200;
+            Random rnd = new Random(1);
+            try (PreparedStatement ps = conn.prepareStatement(aggregate)) {
+                t0 = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    long id = userIds.get(rnd.nextInt(users));
+                    ps.setLong(1, id);
+                    ps.setLong(2, id);
+                    ps.setLong(3, id);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                    }
+                }
+                report("aggregate query", iterations, System.nanoTime() - t0);
+            }
+            t0 = System.nanoTime();
+            for (int i = 0; i < iterations * 100; i++) UserSummary.get(conn, userIds.get(rnd.nextInt(users)));
+            report("UserSummary.get", iterations * 100, System.nanoTime() - t0);
+
+            HotAccounts.enable(conn, accounts.get(0), 8);
+        }
+
+        int threads = 16;
+        int perThread = 2_000;
+        try (ConnectionPool pool = new ConnectionPool(url, DB_USER, DB_PASS, threads, 30_000, 60_000, 30_000)) {
+            CountDownLatch done = new CountDownLatch(threads);
+            long t0 = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                new Thread(() -> {
+                    Random rnd = new Random(seed);
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            String to = rnd.nextInt(4) == 0 ? accounts.get(0) : accounts.get(1 + rnd.nextInt(accounts.size() - 1));
+                            String from = accounts.get(1 + rnd.nextInt(accounts.size() - 1));
+                            if (i % 10 == 0) {
+                                List<TransferRequest> batch = new ArrayList<>();
+                                for (int k = 0; k < 10; k++) {
+                                    batch.add(new TransferRequest(accounts.get(1 + rnd.nextInt(accounts.size() - 1)), to, ONE, 0));
+                                }
+                                try (Connection conn = pool.getConnection()) {
+                                    BankApp.transferBatch(conn, batch);
+                                }
+                            } else if (!from.equals(to)) {
+                                BankApp.transfer(pool, from, to, ONE, 0, TransferMode.PESSIMISTIC);
+                            }
+                        }
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            report("transfers with summary maintenance", (long) threads * perThread, System.nanoTime() - t0);
+
+            try (Connection conn = pool.getConnection()) {
+                System.out.println("  summary mismatches before fold: " + summaryMismatches(conn, userIds));
+                HotAccounts.fold(conn, accounts.get(0));
+                System.out.println("  summary mismatches after fold:  " + summaryMismatches(conn, userIds));
+            }
+        }
+    }
+
+    // Point-in-time balances over a 30-day ledger of `rows` transfers between 1000 accounts
+    // (file DB), with a checkpoint at the end of every day. Balance at noon of day 1, 15 and
+    // 29 for 200 accounts: replaying the account's whole history vs balanceAsOf(), which
+    // should cost the same on every day. Both must agree.
+    private static void asOf(int rows) throws Exception {
+        int accountCount = 1000;
+        int days = 30;
+        long perDay = rows / days;
+        Timestamp start = Timestamp.valueOf("2024-01-01 00:00:00");
+        try (Connection conn = DriverManager.getConnection(fileUrl("asof"), DB_USER, DB_PASS)) {
+            BankApp.createSchema(conn);
+            long owner = BankApp.createUser(conn, "AsOf User", "asof@example.com", "CUSTOMER");
+            for (int i = 0; i < accountCount; i++) {
+                BankApp.createAccount(conn, owner, String.format("ACCT%06d", i), "SAVINGS", Money.ZERO);
+            }
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("UPDATE accounts SET created_at = TIMESTAMP '2023-12-31 00:00:00'");
+            }
+
+            String applyDay = "UPDATE accounts a SET balance = balance" +
+                    " + COALESCE((SELECT SUM(amount) FROM transactions t WHERE t.to_account = a.account_number AND t.txn_id > ?), 0)" +
+                    " - COALESCE((SELECT SUM(amount) FROM transactions t WHERE t.from_account = a.account_number AND t.txn_id > ?), 0)";
+            long t0 = System.nanoTime();
+            long checkpointNanos = 0;
+            long lastTxnId = 0;
+            for (int d = 0; d < days; d++) {
+                try (Statement st = conn.createStatement()) {
+                    st.executeUpdate("INSERT INTO transactions (txn_ref, from_account, to_account, amount, txn_type, status, initiated_by, initiated_at, remarks)"
+                            + " SELECT X, 'ACCT' || LPAD(CAST(MOD(X, " + accountCount + ") AS VARCHAR), 6, '0'),"
+                            + " 'ACCT' || LPAD(CAST(MOD(X * 7 + 1, " + accountCount + ") AS VARCHAR), 6, '0'), 1.00, 'TRANSFER', 'SUCCESS', 0,"
+                            + " DATEADD('SECOND', " + d * 86400L + " + (X - " + (d * perDay + 1) + ") * 86400 / " + perDay + ", TIMESTAMP '2024-01-01 00:00:00'),"
+                            + " 'Internal transfer'"
+                            + " FROM SYSTEM_RANGE(" + (d * perDay + 1) + ", " + (d + 1) * perDay + ")");
+                }
+                try (PreparedStatement ps = conn.prepareStatement(applyDay)) {
+                    ps.setLong(1, lastTxnId);
+                    ps.setLong(2, lastTxnId);
+                    ps.executeUpdate();
+                }
+                try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT MAX(txn_id) FROM transactions")) {
+                    rs.next();
+                    lastTxnId = rs.getLong(1);
+                }
+                long c0 = System.nanoTime();
+                BalanceCheckpoints.take(conn, new Timestamp(start.getTime() + (d + 1) * 86_400_000L));
+                checkpointNanos += System.nanoTime() - c0;
+            }
+            report("load " + days * perDay + " rows, " + days + " checkpoints", days * perDay, System.nanoTime() - t0);
+            System.out.printf("  checkpoint of %d accounts: %.1f ms avg%n", accountCount, checkpointNanos / 1e6 / days);
+
+            String replay = "SELECT COALESCE((SELECT SUM(amount) FROM transactions WHERE to_account = ? AND status = 'SUCCESS' AND initiated_at <= ?), 0)"
+                    + " - COALESCE((SELECT SUM(amount) FROM transactions WHERE from_account = ? AND status = 'SUCCESS' AND initiated_at <= ?), 0)";
+            int samples = 200;
+            for (int day : new int[] {1, 15, 29}) {
+                Timestamp at = new Timestamp(start.getTime() + day * 86_400_000L + 43_200_000L);
+                Random rnd = new Random(day);
+                String[] sample = new String[samples];
+                for (int i = 0; i < samples; i++) sample[i] = String.format("ACCT%06d", rnd.nextInt(accountCount));
+
+                Money[] replayed = new Money[samples];
+                t0 = System.nanoTime();
+                try (PreparedStatement ps = conn.prepareStatement(replay)) {
+                    for (int i = 0; i < samples; i++) {
+                        ps.setString(1, sample[i]);
+                        ps.setTimestamp(2, at);
+                        ps.setString(3, sample[i]);
+                        ps.setTimestamp(4, at);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                            replayed[i] = Money.fromBigDecimal(rs.getBigDecimal(1));
+                        }
+                    }
+                }
+                report("day " + day + " full replay", samples, System.nanoTime() - t0);
+
+                int mismatches = 0;
+                t0 = System.nanoTime();
+                for (int i = 0; i < samples; i++) {
+                    if (!BalanceCheckpoints.balanceAsOf(conn, sample[i], at).equals(replayed[i])) mismatches++;
+                }
+                report("day " + day + " balanceAsOf", samples, System.nanoTime() - t0);
+                System.out.println("    mismatches: " + mismatches + " / " + samples);
+            }
+        }
+    }
+
+    // Users whose user_summary row disagrees with COUNT/SUM over their accounts' main rows
+    private static int summaryMismatches(Connection conn, List<Long> userIds) throws SQLException {
+        int mismatches = 0;
+        String q = "SELECT COUNT(*), COALESCE(SUM(balance), 0) FROM accounts WHERE user_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            for (long id : userIds) {
+                ps.setLong(1, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    UserSummary s = UserSummary.get(conn, id);
+                    if (s == null || s.accountCount != rs.getInt(1)
+                            || !s.totalBalance.equals(Money.fromBigDecimal(rs.getBigDecimal(2)))) {
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private static void ledgerQueries(Connection conn, String label, int iterations) throws SQLException {
+        String[] names = {"recent transactions", "outgoing history", "incoming history", "recent audit"};
+        String[] queries = {
+            "SELECT txn_id, from_account, to_account, amount, initiated_at FROM transactions ORDER BY initiated_at DESC LIMIT 10",
+            "SELECT txn_id, to_account, amount, initiated_at FROM transactions WHERE from_account = ? ORDER BY initiated_at DESC LIMIT 20",
+            "SELECT txn_id, from_account, amount, initiated_at FROM transactions WHERE to_account = ? ORDER BY initiated_at DESC LIMIT 20",
+            "SELECT id, action, meta, created_at FROM audit_logs ORDER BY created_at DESC LIMIT 10"
+        };
+        Random rnd = new Random(7);
+        for (int q = 0; q < queries.length; q++) {
+            try (PreparedStatement ps = conn.prepareStatement(queries[q])) {
+                long t0 = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    if (queries[q].contains("?")) ps.setString(1, String.format("ACCT%06d", rnd.nextInt(10000)));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            // drain
+                        }
+                    }
+                }
+                System.out.printf("  %-12s %-20s %10.3f ms/query%n", label, names[q],
+                        (System.nanoTime() - t0) / 1e6 / iterations);
+            }
+        }
+    }
+
+    // Form POST, response body drained so the keep-alive connection can be reused
+    private static int post(java.net.URL url, String form) throws java.io.IOException {
+        java.net.HttpURLConnection http = (java.net.HttpURLConnection) url.openConnection();
+        http.setRequestMethod("POST");
+        http.setDoOutput(true);
+        http.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (java.io.OutputStream out = http.getOutputStream()) {
+            out.write(form.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
+        int status = http.getResponseCode();
+        java.io.InputStream in = status < 400 ? http.getInputStream() : http.getErrorStream();
+        if (in != null) {
+            try (java.io.InputStream body = in) {
+                byte[] buf = new byte[256];
+                while (body.read(buf) > 0) {
+                    // discard
+                }
+            }
+        }
+        return status;
+    }
+
+    // Milliseconds at quantile q of sorted nanosecond latencies
+    private static double percentile(long[] sortedNanos, double q) {
+        int i = (int) Math.ceil(q * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(i, sortedNanos.length - 1))] / 1e6;
+    }
+
+    // Amount handling of one transfer, no database: the old double + String.format BigDecimal
+    // construction (4 per transfer) vs Money (long arithmetic, one toBigDecimal() per bound
+    // parameter). Reports ns/op and bytes allocated/op from the thread allocation counter.
+    private static void money() {
+        int ops = 2_000_000;
+        // varying amounts so nothing constant-folds; results escape into `bound` like JDBC parameters do
+        double[] amountsD = new double[1024];
+        Money[] amounts = new Money[1024];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = Money.ofMinor(100 + i * 7L);
+            amountsD[i] = amounts[i].minor() / 100.0;
+        }
+        java.math.BigDecimal fromD = new java.math.BigDecimal("15000.00");
+        java.math.BigDecimal toD = new java.math.BigDecimal("2000.00");
+        Money from = Money.of("15000.00");
+        Money to = Money.of("2000.00");
+        Object[] bound = new Object[3];
+
+        for (int round = 0; round < 3; round++) { // first rounds are warm-up
+            long bytes0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                double amount = amountsD[i & 1023];
+                if (fromD.compareTo(new java.math.BigDecimal(String.format("%.2f", amount))) < 0) continue;
+                bound[0] = fromD.subtract(new java.math.BigDecimal(String.format("%.2f", amount)));
+                bound[1] = toD.add(new java.math.BigDecimal(String.format("%.2f", amount)));
+                bound[2] = new java.math.BigDecimal(String.format("%.2f", amount));
+            }
+            long legacyNanos = System.nanoTime() - t0;
+            long legacyBytes = allocatedBytes() - bytes0;
+
+            bytes0 = allocatedBytes();
+            t0 = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                Money amount = amounts[i & 1023];
+                if (from.isLessThan(amount)) continue;
+                bound[0] = from.minus(amount).toBigDecimal();
+                bound[1] = to.plus(amount).toBigDecimal();
+                bound[2] = amount.toBigDecimal();
+            }
+            long moneyNanos = System.nanoTime() - t0;
+            long moneyBytes = allocatedBytes() - bytes0;
+
+            if (round == 2) {
+                System.out.printf("  %-28s %8.1f ns/op %8.0f B/op%n", "double + String.format",
+                        (double) legacyNanos / ops, (double) legacyBytes / ops);
+                System.out.printf("  %-28s %8.1f ns/op %8.0f B/op%n", "Money", (double) moneyNanos / ops, (double) moneyBytes / ops);
+            }
+        }
+    }
+
+    // Bytes allocated so far by the current thread (HotSpot), or 0 if unsupported
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // Ledger rows written so far, SUCCESS and FAILED
+    private static long ledgerRows(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM transactions")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // Fail the run unless exactly one ledger row per transfer was written since `before`
+    private static void checkLedger(Connection conn, String label, long before, long transfers) throws SQLException {
+        long written = ledgerRows(conn) - before;
+        System.out.println("  " + label + ": ledger rows=" + written + " (expected " + transfers + ")");
+        if (written != transfers) {
+            throw new IllegalStateException(label + " wrote " + written + " ledger rows for " + transfers + " transfers");
+        }
+    }
+
+    private static java.math.BigDecimal totalBalance(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT SUM(balance) FROM accounts")) {
+            rs.next();
+            return rs.getBigDecimal(1);
+        }
+    }
+
+    private static void report(String label, long ops, long elapsedNanos) {
+        double ms = elapsedNanos / 1_000_000.0;
+        System.out.printf("  %-28s %10.1f ms %12.0f ops/s%n", label, ms, ops * 1000.0 / Math.max(ms, 0.001));
+    }
+}
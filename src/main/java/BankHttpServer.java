@@ -0,0 +1,367 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BankHttpServer.java
+ *
+ * Embedded HTTP API (JDK com.sun.net.httpserver) over BankApp, borrowing connections from a
+ * ConnectionPool. Requests are form-encoded (query string or
+ * application/x-www-form-urlencoded body), responses are JSON.
+ *
+ *   POST /users      name, email, role                           -> 201 {"userId":..}
+ *   POST /accounts   userId, accountNumber, type, balance         -> 201 {"accountId":..}
+ *   GET  /accounts   userId                                       -> 200 {"userId":..,"accounts":[..]}
+ *   GET  /portfolio  userId                                       -> 200 {"accountCount":..,"totalBalance":..} / 404
+ *   GET  /balance    account, asOf (yyyy-mm-dd hh:mm:ss)          -> 200 {"balance":..} / 404
+ *   GET  /statement  account[, cursor][, limit]                   -> 200 {"lines":[..],"olderCursor":..,"newerCursor":..}
+ *   POST /transfers  from, to, amount, initiatedBy[, mode][, idempotencyKey]
+ *                                                                -> 200 {"success":true} / 422 {"success":false,"reason":..}
+ *                                                                   409 if idempotencyKey was used for a different transfer,
+ *                                                                   500 on a database error
+ *
+ * Every exchange runs on its own virtual thread when the JVM has them (Java 21+), so many
+ * concurrent clients blocked on JDBC or on the pool do not each hold a platform thread;
+ * older JVMs fall back to a cached thread pool. Database concurrency is still bounded by
+ * the pool size.
+ *
+ * Run: java -cp .:h2.jar BankHttpServer [port] [checkpointMinutes]
+ *      (default 8080, uses ./bankdb; takes a balance checkpoint every checkpointMinutes,
+ *      default at midnight)
+ */
+public class BankHttpServer implements AutoCloseable {
+
+    private static final int DEFAULT_PORT = 8080;
+
+    private final ConnectionPool pool;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // port 0 picks a free port (see port())
+    public BankHttpServer(ConnectionPool pool, int port) throws IOException {
+        this.pool = pool;
+        this.executor = newPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/users", ex -> handle(ex, "POST", this::createUser));
+        server.createContext("/accounts", ex -> {
+            if ("GET".equals(ex.getRequestMethod())) handle(ex, "GET", this::accountOverview);
+            else handle(ex, "POST", this::createAccount);
+        });
+        server.createContext("/transfers", ex -> handle(ex, "POST", this::transfer));
+        server.createContext("/statement", ex -> handle(ex, "GET", this::statement));
+        server.createContext("/portfolio", ex -> handle(ex, "GET", this::portfolio));
+        server.createContext("/balance", ex -> handle(ex, "GET", this::balanceAsOf));
+        server.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ConnectionPool pool = new ConnectionPool(BankApp.JDBC_URL, BankApp.DB_USER, BankApp.DB_PASS, BankApp.POOL_SIZE,
+                BankApp.POOL_ACQUIRE_TIMEOUT_MS, BankApp.POOL_IDLE_TIMEOUT_MS, BankApp.POOL_LEAK_THRESHOLD_MS);
+        try (Connection conn = pool.getConnection()) {
+            BankApp.createSchema(conn);
+        }
+        long checkpointInterval = args.length > 1 ? Long.parseLong(args[1]) * 60_000 : BankApp.CHECKPOINT_INTERVAL_MS;
+        BalanceCheckpoints.startCheckpointer(BankApp.JDBC_URL, BankApp.DB_USER, BankApp.DB_PASS, checkpointInterval);
+        BankHttpServer http = new BankHttpServer(pool, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            http.close();
+            pool.close();
+        }));
+        System.out.println("Listening on http://localhost:" + http.port() + "/");
+    }
+
+    // One new virtual thread per task where available (Java 21+), else a cached thread pool
+    static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Status code plus JSON body
+    private static final class Response {
+        final int status;
+        final String json;
+
+        Response(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+    }
+
+    // Thrown for missing or malformed parameters -> 400
+    private static final class BadRequest extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+
+    private interface Endpoint {
+        Response handle(Map<String, String> params) throws BadRequest, SQLException;
+    }
+
+    private void handle(HttpExchange ex, String method, Endpoint endpoint) throws IOException {
+        Response r;
+        try {
+            if (!method.equals(ex.getRequestMethod())) {
+                r = new Response(405, error("method not allowed"));
+            } else {
+                r = endpoint.handle(params(ex));
+            }
+        } catch (BadRequest e) {
+            r = new Response(400, error(e.getMessage()));
+        } catch (SQLIntegrityConstraintViolationException e) {
+            r = new Response(409, error("conflict"));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            r = new Response(500, error("database error"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            r = new Response(500, error("internal error"));
+        }
+        byte[] body = r.json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(r.status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Response createUser(Map<String, String> p) throws BadRequest, SQLException {
+        long id = BankApp.createUser(pool, required(p, "name"), required(p, "email"), required(p, "role"));
+        return new Response(201, "{\"userId\":" + id + "}");
+    }
+
+    private Response createAccount(Map<String, String> p) throws BadRequest, SQLException {
+        long id = BankApp.createAccount(pool, requiredLong(p, "userId"), required(p, "accountNumber"),
+                required(p, "type"), requiredMoney(p, "balance", false));
+        return new Response(201, "{\"accountId\":" + id + ",\"accountNumber\":" + quote(p.get("accountNumber")) + "}");
+    }
+
+    private Response accountOverview(Map<String, String> p) throws BadRequest, SQLException {
+        long userId = requiredLong(p, "userId");
+        StringBuilder json = new StringBuilder("{\"userId\":").append(userId).append(",\"accounts\":[");
+        boolean first = true;
+        for (BalanceCache.AccountView a : BankApp.BALANCE_CACHE.overview(pool, userId)) {
+            if (!first) json.append(',');
+            first = false;
+            json.append("{\"accountNumber\":").append(quote(a.accountNumber))
+                    .append(",\"type\":").append(quote(a.type))
+                    .append(",\"status\":").append(quote(a.status))
+                    .append(",\"balance\":").append(a.balance)
+                    .append(",\"createdAt\":").append(quote(String.valueOf(a.createdAt)))
+                    .append('}');
+        }
+        return new Response(200, json.append("]}").toString());
+    }
+
+    // Dashboard totals from the user_summary row (see UserSummary)
+    private Response portfolio(Map<String, String> p) throws BadRequest, SQLException {
+        long userId = requiredLong(p, "userId");
+        UserSummary s = UserSummary.get(pool, userId);
+        if (s == null) return new Response(404, error("no such user"));
+        return new Response(200, "{\"userId\":" + userId +
+                ",\"accountCount\":" + s.accountCount +
+                ",\"totalBalance\":" + s.totalBalance +
+                ",\"lastActivity\":" + (s.lastActivity == null ? "null" : quote(s.lastActivity.toString())) + "}");
+    }
+
+    // Balance at a past instant, from the nearest checkpoint (see BalanceCheckpoints)
+    private Response balanceAsOf(Map<String, String> p) throws BadRequest, SQLException {
+        String account = required(p, "account");
+        Timestamp asOf;
+        try {
+            asOf = Timestamp.valueOf(required(p, "asOf"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest("asOf must be yyyy-mm-dd hh:mm:ss[.f]");
+        }
+        Money balance = BalanceCheckpoints.balanceAsOf(pool, account, asOf);
+        if (balance == null) return new Response(404, error("no such account at " + asOf));
+        return new Response(200, "{\"account\":" + quote(account) + ",\"asOf\":" + quote(asOf.toString()) +
+                ",\"balance\":" + balance + "}");
+    }
+
+    // Keyset-paginated statement, newest first (see AccountStatement)
+    private Response statement(Map<String, String> p) throws BadRequest, SQLException {
+        String account = required(p, "account");
+        int limit = p.containsKey("limit") ? requiredInt(p, "limit", 1, AccountStatement.MAX_PAGE_SIZE) : 50;
+        AccountStatement.Page page;
+        try (Connection conn = pool.getConnection()) {
+            page = AccountStatement.page(conn, account, p.get("cursor"), limit);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest(e.getMessage());
+        }
+        StringBuilder json = new StringBuilder("{\"account\":").append(quote(account)).append(",\"lines\":[");
+        for (int i = 0; i < page.lines.size(); i++) {
+            AccountStatement.Line l = page.lines.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"txnId\":").append(l.txnId)
+                    .append(",\"txnRef\":").append(l.txnRef)
+                    .append(",\"initiatedAt\":").append(quote(l.initiatedAt.toString()))
+                    .append(",\"counterparty\":").append(quote(l.counterparty))
+                    .append(",\"amount\":").append(l.amount)
+                    .append('}');
+        }
+        json.append("],\"olderCursor\":").append(page.olderCursor == null ? "null" : quote(page.olderCursor))
+                .append(",\"newerCursor\":").append(page.newerCursor == null ? "null" : quote(page.newerCursor))
+                .append('}');
+        return new Response(200, json.toString());
+    }
+
+    private Response transfer(Map<String, String> p) throws BadRequest {
+        TransferMode mode;
+        try {
+            mode = p.containsKey("mode") ? TransferMode.valueOf(p.get("mode")) : TransferMode.PESSIMISTIC;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest("unknown mode: " + p.get("mode"));
+        }
+        String idempotencyKey = p.get("idempotencyKey");
+        if (idempotencyKey != null && (idempotencyKey.isEmpty() || idempotencyKey.length() > BankApp.MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new BadRequest("idempotencyKey must be 1.." + BankApp.MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+        String failure = BankApp.transferWithKey(pool, required(p, "from"), required(p, "to"), requiredMoney(p, "amount", true),
+                requiredLong(p, "initiatedBy"), mode, idempotencyKey);
+        if (failure == null) return new Response(200, "{\"success\":true}");
+        if ("error".equals(failure)) return new Response(500, error("database error"));
+        if (BankApp.IDEMPOTENCY_CONFLICT.equals(failure)) {
+            return new Response(409, error("idempotencyKey was already used for a different transfer"));
+        }
+        return new Response(422, "{\"success\":false,\"reason\":" + quote(failure) + "}");
+    }
+
+    // Query string and form body parameters (body wins on duplicates)
+    private static Map<String, String> params(HttpExchange ex) throws IOException, BadRequest {
+        Map<String, String> params = new HashMap<>();
+        parseForm(ex.getRequestURI().getRawQuery(), params);
+        try (InputStream in = ex.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = in.read(buf)) > 0) body.write(buf, 0, n);
+            parseForm(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> into) throws BadRequest {
+        if (form == null || form.isEmpty()) return;
+        try {
+            for (String pair : form.split("&")) {
+                if (pair.isEmpty()) continue;
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                into.put(key, value);
+            }
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new BadRequest("malformed form data");
+        }
+    }
+
+    private static String required(Map<String, String> p, String name) throws BadRequest {
+        String v = p.get(name);
+        if (v == null || v.isEmpty()) throw new BadRequest("missing parameter: " + name);
+        return v;
+    }
+
+    private static long requiredLong(Map<String, String> p, String name) throws BadRequest {
+        try {
+            return Long.parseLong(required(p, name));
+        } catch (NumberFormatException e) {
+            throw new BadRequest("not a number: " + name);
+        }
+    }
+
+    // Whole number in min..max, range-checked before narrowing so large values cannot wrap
+    private static int requiredInt(Map<String, String> p, String name, int min, int max) throws BadRequest {
+        long v = requiredLong(p, name);
+        if (v < min || v > max) throw new BadRequest(name + " must be " + min + ".." + max);
+        return (int) v;
+    }
+
+    // Amount that must be > 0 (positive) or >= 0; a negative transfer amount would move the
+    // money the other way, without a funds check on the account it is taken from
+    private static Money requiredMoney(Map<String, String> p, String name, boolean positive) throws BadRequest {
+        Money m;
+        try {
+            m = Money.of(required(p, name));
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new BadRequest("not an amount with at most 2 decimals: " + name);
+        }
+        if (positive ? !m.isPositive() : m.isLessThan(Money.ZERO)) {
+            throw new BadRequest(name + " must be " + (positive ? "positive" : "zero or more"));
+        }
+        return m;
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    // JSON string literal
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // Stop accepting, give in-flight exchanges a moment to finish
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BankWireClient.java
+ *
+ * Pipelining client for BankWireServer. Every call writes one request frame and returns a
+ * future right away; a reader thread completes futures by correlation ID as responses
+ * arrive, in whatever order the server finishes them. Any number of threads may share a
+ * client.
+ */
+public class BankWireClient implements AutoCloseable {
+
+    // Decoded OP_ACCOUNT response
+    public static final class AccountInfo {
+        public final long userId;
+        public final String type;
+        public final String status;
+        public final Money balance;
+
+        AccountInfo(long userId, String type, String status, Money balance) {
+            this.userId = userId;
+            this.type = type;
+            this.status = status;
+            this.balance = balance;
+        }
+    }
+
+    private final SocketChannel channel;
+    private final Thread reader;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public BankWireClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        reader = new Thread(this::readLoop, "wire-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Completes with true if the transfer committed, false if it was rejected; completes
+    // exceptionally on a server error
+    public CompletableFuture<Boolean> transfer(String fromAccount, String toAccount, Money amount, long initiatedBy,
+                                               TransferMode mode) {
+        byte[] from = fromAccount.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toAccount.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer req = request(BankWireServer.OP_TRANSFER, 2 + from.length + 2 + to.length + 8 + 8 + 1);
+        req.putShort((short) from.length).put(from);
+        req.putShort((short) to.length).put(to);
+        req.putLong(amount.minor()).putLong(initiatedBy).put((byte) mode.ordinal());
+        return send(req).thenApply(resp -> status(resp) == BankWireServer.STATUS_OK);
+    }
+
+    // Completes with the balance, or null for an unknown account
+    public CompletableFuture<Money> balance(String accountNumber) {
+        return send(accountRequest(BankWireServer.OP_BALANCE, accountNumber))
+                .thenApply(resp -> status(resp) == BankWireServer.STATUS_OK ? Money.ofMinor(resp.getLong()) : null);
+    }
+
+    // Completes with the account, or null for an unknown account
+    public CompletableFuture<AccountInfo> account(String accountNumber) {
+        return send(accountRequest(BankWireServer.OP_ACCOUNT, accountNumber)).thenApply(resp -> {
+            if (status(resp) != BankWireServer.STATUS_OK) return null;
+            long userId = resp.getLong();
+            String type = BankWireServer.getString(resp);
+            String status = BankWireServer.getString(resp);
+            return new AccountInfo(userId, type, status, Money.ofMinor(resp.getLong()));
+        });
+    }
+
+    public int inFlight() {
+        return pending.size();
+    }
+
+    private ByteBuffer accountRequest(byte op, String accountNumber) {
+        byte[] an = accountNumber.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer req = request(op, 2 + an.length);
+        req.putShort((short) an.length).put(an);
+        return req;
+    }
+
+    // Frame with length, correlation ID and opcode written; caller puts the payload
+    private ByteBuffer request(byte op, int payloadLength) {
+        ByteBuffer b = ByteBuffer.allocate(4 + 5 + payloadLength);
+        b.putInt(5 + payloadLength).putInt(nextId.incrementAndGet()).put(op);
+        return b;
+    }
+
+    private CompletableFuture<ByteBuffer> send(ByteBuffer req) {
+        CompletableFuture<ByteBuffer> f = new CompletableFuture<>();
+        int correlationId = req.getInt(4);
+        pending.put(correlationId, f);
+        req.flip();
+        try {
+            synchronized (channel) {
+                while (req.hasRemaining()) channel.write(req);
+            }
+        } catch (IOException ex) {
+            pending.remove(correlationId);
+            f.completeExceptionally(ex);
+        }
+        if (closed && pending.remove(correlationId) != null) f.completeExceptionally(new IOException("client closed"));
+        return f;
+    }
+
+    // Status byte of a response; the buffer is left positioned at the payload
+    private static byte status(ByteBuffer resp) {
+        byte status = resp.get();
+        if (status == BankWireServer.STATUS_ERROR) throw new IllegalStateException("malformed request");
+        if (status == BankWireServer.STATUS_SERVER_ERROR) throw new IllegalStateException("server error");
+        return status;
+    }
+
+    private void readLoop() {
+        ByteBuffer in = ByteBuffer.allocate(4 + BankWireServer.MAX_FRAME);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+                    int length = in.getInt();
+                    byte[] frame = new byte[length];
+                    in.get(frame);
+                    ByteBuffer resp = ByteBuffer.wrap(frame);
+                    CompletableFuture<ByteBuffer> f = pending.remove(resp.getInt());
+                    if (f != null) f.complete(resp);
+                }
+                in.compact();
+            }
+        } catch (IOException ex) {
+            if (!closed) ex.printStackTrace();
+        }
+        closed = true;
+        IOException gone = new IOException("connection closed");
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<ByteBuffer> f = pending.remove(id);
+            if (f != null) f.completeExceptionally(gone);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignore) {}
+        try {
+            reader.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BankWireServer.java
+ *
+ * Compact binary protocol for transfers, balance inquiries and account lookups over
+ * non-blocking NIO sockets, for internal callers where HTTP/JSON overhead dominates.
+ *
+ * Framing (all integers big-endian, strings are a u16 byte length + UTF-8):
+ *   request  = i32 length | i32 correlationId | u8 opcode | payload
+ *   response = i32 length | i32 correlationId | u8 status | payload
+ * where length counts the bytes after the length field.
+ *
+ *   OP_TRANSFER  from, to, i64 amount (minor units), i64 initiatedBy, u8 TransferMode ordinal
+ *                -> no payload (STATUS_OK, or STATUS_REJECTED for a business rejection such as
+ *                   insufficient funds; STATUS_ERROR if amount <= 0)
+ *   OP_BALANCE   account -> i64 balance (minor units), STATUS_REJECTED if unknown
+ *   OP_ACCOUNT   account -> i64 user_id, type, status, i64 balance (minor units)
+ *
+ * STATUS_ERROR means the request was malformed and must not be retried as is;
+ * STATUS_SERVER_ERROR means the server failed (e.g. a database error) and the request may
+ * be retried.
+ *
+ * Requests are pipelined: a client may send many frames without waiting, and responses
+ * come back in completion order tagged with the request's correlation ID. One selector
+ * thread does all socket I/O and framing; requests run on a worker pool through
+ * BankApp.transfer() and a ConnectionPool. A connection with MAX_IN_FLIGHT unanswered
+ * requests is not read from until some complete.
+ */
+public class BankWireServer implements AutoCloseable {
+
+    static final byte OP_TRANSFER = 1;
+    static final byte OP_BALANCE = 2;
+    static final byte OP_ACCOUNT = 3;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_REJECTED = 1;
+    static final byte STATUS_ERROR = 2;
+    static final byte STATUS_SERVER_ERROR = 3;
+
+    static final int MAX_FRAME = 64 * 1024;
+    private static final int MAX_IN_FLIGHT = 1024;
+    private static final int DEFAULT_PORT = 9090;
+
+    // One client connection; socket state is touched by the selector thread only
+    private static final class Client {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(4 + MAX_FRAME);
+        final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        boolean readPaused;
+        volatile boolean closed;
+
+        Client(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Thread ioThread;
+    private final ConcurrentLinkedQueue<Client> writable = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    // metrics
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    // port 0 picks a free port (see port())
+    public BankWireServer(ConnectionPool pool, int port, int workerThreads) throws IOException {
+        this.pool = pool;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "wire-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.ioThread = new Thread(this::run, "wire-io");
+        ioThread.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ConnectionPool pool = new ConnectionPool(BankApp.JDBC_URL, BankApp.DB_USER, BankApp.DB_PASS, BankApp.POOL_SIZE,
+                BankApp.POOL_ACQUIRE_TIMEOUT_MS, BankApp.POOL_IDLE_TIMEOUT_MS, BankApp.POOL_LEAK_THRESHOLD_MS);
+        try (Connection conn = pool.getConnection()) {
+            BankApp.createSchema(conn);
+        }
+        BankWireServer wire = new BankWireServer(pool, port, BankApp.POOL_SIZE);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            wire.close();
+            pool.close();
+        }));
+        System.out.println("Listening on port " + wire.port());
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                wakeupPending.set(false);
+                Client c;
+                while ((c = writable.poll()) != null) {
+                    if (!c.closed) flush(c);
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    if (key.isReadable()) read(client);
+                    if (key.isValid() && key.isWritable()) flush(client);
+                }
+            } catch (IOException ex) {
+                if (running) ex.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+            key.attach(new Client(ch, key));
+            connections.incrementAndGet();
+        }
+    }
+
+    // Read what is available, dispatch every complete frame
+    private void read(Client c) {
+        int n;
+        try {
+            n = c.channel.read(c.in);
+        } catch (IOException ex) {
+            n = -1;
+        }
+        if (n < 0) {
+            close(c);
+            return;
+        }
+        c.in.flip();
+        while (c.in.remaining() >= 4) {
+            int length = c.in.getInt(c.in.position());
+            if (length < 5 || length > MAX_FRAME) { // garbage: drop the connection
+                close(c);
+                return;
+            }
+            if (c.in.remaining() < 4 + length) break;
+            byte[] frame = new byte[length];
+            c.in.position(c.in.position() + 4);
+            c.in.get(frame);
+            dispatch(c, frame);
+        }
+        c.in.compact();
+        if (c.inFlight.get() >= MAX_IN_FLIGHT) {
+            c.readPaused = true;
+            c.key.interestOps(c.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    private void dispatch(Client c, byte[] frame) {
+        c.inFlight.incrementAndGet();
+        requests.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                c.out.add(process(frame));
+            } finally {
+                // even if no response could be built, the slot must free up or the
+                // client's pipeline window stays short forever
+                c.inFlight.decrementAndGet();
+                writable.add(c);
+                if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+            }
+        });
+    }
+
+    // Write queued responses; keep OP_WRITE interest while the socket is full
+    private void flush(Client c) {
+        try {
+            ByteBuffer buf;
+            while ((buf = c.out.peek()) != null) {
+                c.channel.write(buf);
+                if (buf.hasRemaining()) break;
+                c.out.poll();
+            }
+            int ops = SelectionKey.OP_READ;
+            if (c.readPaused && c.inFlight.get() >= MAX_IN_FLIGHT) ops = 0;
+            else c.readPaused = false;
+            if (!c.out.isEmpty()) ops |= SelectionKey.OP_WRITE;
+            c.key.interestOps(ops);
+        } catch (IOException ex) {
+            close(c);
+        }
+    }
+
+    private void close(Client c) {
+        c.closed = true;
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException ignore) {}
+    }
+
+    // Decode one request, run it, encode the response frame
+    private ByteBuffer process(byte[] frame) {
+        ByteBuffer req = ByteBuffer.wrap(frame);
+        if (frame.length < 4) {
+            errors.incrementAndGet();
+            return response(0, STATUS_ERROR, 0);
+        }
+        int correlationId = req.getInt();
+        try {
+            byte op = req.get();
+            switch (op) {
+                case OP_TRANSFER: {
+                    String from = getString(req);
+                    String to = getString(req);
+                    Money amount = Money.ofMinor(req.getLong());
+                    long initiatedBy = req.getLong();
+                    int mode = req.get();
+                    if (mode < 0 || mode >= TransferMode.values().length) return response(correlationId, STATUS_ERROR, 0);
+                    // a zero or negative amount would move money the other way, unchecked
+                    if (!amount.isPositive()) return response(correlationId, STATUS_ERROR, 0);
+                    String failure = BankApp.transferWithKey(pool, from, to, amount, initiatedBy, TransferMode.values()[mode], null);
+                    if ("error".equals(failure)) {
+                        errors.incrementAndGet();
+                        return response(correlationId, STATUS_SERVER_ERROR, 0);
+                    }
+                    return response(correlationId, failure == null ? STATUS_OK : STATUS_REJECTED, 0);
+                }
+                case OP_BALANCE:
+                case OP_ACCOUNT:
+                    return lookup(correlationId, op, getString(req));
+                default:
+                    return response(correlationId, STATUS_ERROR, 0);
+            }
+        } catch (BufferUnderflowException ex) {
+            errors.incrementAndGet();
+            return response(correlationId, STATUS_ERROR, 0);
+        } catch (SQLException | RuntimeException ex) {
+            ex.printStackTrace();
+            errors.incrementAndGet();
+            return response(correlationId, STATUS_SERVER_ERROR, 0);
+        }
+    }
+
+    private ByteBuffer lookup(int correlationId, byte op, String accountNumber) throws SQLException {
+        BalanceCache.AccountView a = BankApp.BALANCE_CACHE.account(pool, accountNumber);
+        if (a == null) return response(correlationId, STATUS_REJECTED, 0);
+        long balance = a.balance.minor();
+        if (op == OP_BALANCE) {
+            ByteBuffer resp = response(correlationId, STATUS_OK, 8);
+            resp.putLong(balance);
+            resp.flip();
+            return resp;
+        }
+        byte[] type = a.type.getBytes(StandardCharsets.UTF_8);
+        byte[] status = a.status.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer resp = response(correlationId, STATUS_OK, 8 + 2 + type.length + 2 + status.length + 8);
+        resp.putLong(a.userId);
+        resp.putShort((short) type.length).put(type);
+        resp.putShort((short) status.length).put(status);
+        resp.putLong(balance);
+        resp.flip();
+        return resp;
+    }
+
+    // Response frame with the header written; with no payload it is ready to send, otherwise
+    // the caller puts the payload and flips
+    private static ByteBuffer response(int correlationId, byte status, int payloadLength) {
+        ByteBuffer b = ByteBuffer.allocate(4 + 5 + payloadLength);
+        b.putInt(5 + payloadLength).putInt(correlationId).put(status);
+        if (payloadLength == 0) b.flip();
+        return b;
+    }
+
+    static String getString(ByteBuffer b) {
+        int len = b.getShort() & 0xffff;
+        if (len > b.remaining()) throw new BufferUnderflowException();
+        String s = new String(b.array(), b.arrayOffset() + b.position(), len, StandardCharsets.UTF_8);
+        b.position(b.position() + len);
+        return s;
+    }
+
+    public long connections() {
+        return connections.get();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    // Stop accepting and reading; requests already dispatched are given a moment to finish
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException ignore) {}
+        }
+        try {
+            selector.close();
+        } catch (IOException ignore) {}
+    }
+}
@@ -0,0 +1,341 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionPool.java
+ *
+ * Small bounded JDBC connection pool.
+ *  - at most maxSize physical connections; getConnection() waits up to acquireTimeout
+ *  - idle connections are validated (isValid) before reuse if they sat idle a while
+ *  - idle connections unused for idleTimeout are closed by a background evictor
+ *  - a connection held longer than leakThreshold is reported once (0 turns leak detection
+ *    off); with -Dbank.pool.leakStacks=true the report includes the stack trace of the code
+ *    that borrowed it, which costs a stack capture on every borrow, so it is off by default
+ *
+ * getConnection() returns a proxy; close() on it hands the physical connection back to the
+ * pool (rolling back an open transaction and restoring auto-commit first), so existing
+ * try-with-resources code works unchanged.
+ *
+ * Each physical connection keeps an LRU StatementCache: prepareStatement(sql) on a pooled
+ * connection reuses the statement prepared for the same SQL last time, so steady-state
+ * traffic does no statement preparation at all.
+ *
+ * Metrics: borrows, timeouts, average/max wait, in-use/idle counts, peak in-use,
+ * utilization (share of pool capacity held by borrowers since the pool started), and
+ * statement cache hits/misses/evictions.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final long VALIDATE_AFTER_IDLE_MS = 5_000;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    // Debug aid: record where each connection was borrowed, for leak reports
+    private static final boolean CAPTURE_BORROW_STACKS = Boolean.getBoolean("bank.pool.leakStacks");
+
+    // One physical connection and its bookkeeping
+    private static final class Pooled {
+        final Connection physical;
+        final StatementCache statements; // null when statement caching is off
+        volatile long lastReturned = System.nanoTime();
+        volatile long borrowedAt;
+        volatile Throwable borrower;
+        volatile boolean leakReported;
+
+        Pooled(Connection physical, StatementCache statements) {
+            this.physical = physical;
+            this.statements = statements;
+        }
+    }
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutNanos;
+    private final long leakThresholdNanos;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Pooled> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Pooled> inUse = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private final long startedAt = System.nanoTime();
+    private volatile boolean closed;
+
+    // metrics
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong holdNanos = new AtomicLong();
+    private final AtomicLong peakInUse = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final AtomicLong statementEvictions = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String pass, int maxSize,
+                          long acquireTimeoutMs, long idleTimeoutMs, long leakThresholdMs) {
+        this(url, user, pass, maxSize, acquireTimeoutMs, idleTimeoutMs, leakThresholdMs, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    // statementCacheSize: cached statements per connection, 0 to disable
+    public ConnectionPool(String url, String user, String pass, int maxSize,
+                          long acquireTimeoutMs, long idleTimeoutMs, long leakThresholdMs, int statementCacheSize) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMs);
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(100, (leakThresholdMs > 0 ? Math.min(idleTimeoutMs, leakThresholdMs) : idleTimeoutMs) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Borrow a connection; close() it to give it back
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long t0 = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + acquireTimeoutMs + " ms waiting for a connection"
+                        + " (pool size " + maxSize + ", in use " + inUse.size() + ")");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", ie);
+        }
+
+        Pooled p;
+        try {
+            p = takeIdleOrCreate();
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        }
+        long waited = System.nanoTime() - t0;
+        borrows.incrementAndGet();
+        waitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        p.borrowedAt = System.nanoTime();
+        p.borrower = CAPTURE_BORROW_STACKS && leakThresholdNanos > 0 ? new Throwable("Connection borrowed here") : null;
+        p.leakReported = false;
+        inUse.add(p);
+        peakInUse.accumulateAndGet(inUse.size(), Math::max);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new Handle(p));
+    }
+
+    // Most recently returned idle connection that is still valid, else a new one
+    private Pooled takeIdleOrCreate() throws SQLException {
+        Pooled p;
+        while ((p = idle.pollFirst()) != null) {
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - p.lastReturned);
+            if (idleMs < VALIDATE_AFTER_IDLE_MS || p.physical.isValid(2)) return p;
+            closeQuietly(p);
+        }
+        Connection physical = DriverManager.getConnection(url, user, pass);
+        StatementCache statements = statementCacheSize > 0
+                ? new StatementCache(physical, statementCacheSize, statementHits, statementMisses, statementEvictions)
+                : null;
+        return new Pooled(physical, statements);
+    }
+
+    private void release(Pooled p) {
+        holdNanos.addAndGet(System.nanoTime() - p.borrowedAt);
+        inUse.remove(p);
+        p.borrower = null;
+        boolean reusable = !closed;
+        try {
+            if (reusable && !p.physical.getAutoCommit()) {
+                p.physical.rollback();
+                p.physical.setAutoCommit(true);
+            }
+        } catch (SQLException ex) {
+            reusable = false;
+        }
+        if (reusable) {
+            p.lastReturned = System.nanoTime();
+            idle.offerFirst(p);
+        } else {
+            closeQuietly(p);
+        }
+        permits.release();
+    }
+
+    // Evict long-idle connections and report leaks
+    private void housekeep() {
+        long now = System.nanoTime();
+        for (Iterator<Pooled> it = idle.descendingIterator(); it.hasNext(); ) {
+            Pooled p = it.next();
+            if (now - p.lastReturned > idleTimeoutNanos && idle.remove(p)) closeQuietly(p);
+        }
+        if (leakThresholdNanos <= 0) return;
+        for (Pooled p : inUse) {
+            Throwable borrower = p.borrower;
+            if (!p.leakReported && now - p.borrowedAt > leakThresholdNanos) {
+                p.leakReported = true;
+                leaks.incrementAndGet();
+                System.err.println("Possible connection leak: held for "
+                        + TimeUnit.NANOSECONDS.toMillis(now - p.borrowedAt) + " ms"
+                        + (borrower == null ? " (run with -Dbank.pool.leakStacks=true to see where it was borrowed)" : ""));
+                if (borrower != null) borrower.printStackTrace();
+            }
+        }
+    }
+
+    private static void closeQuietly(Pooled p) {
+        try {
+            if (p.statements != null) p.statements.clear();
+            p.physical.close();
+        } catch (SQLException ignore) {}
+    }
+
+    public int size() {
+        return inUse.size() + idle.size();
+    }
+
+    public int inUseCount() {
+        return inUse.size();
+    }
+
+    public int idleCount() {
+        return idle.size();
+    }
+
+    public long borrows() {
+        return borrows.get();
+    }
+
+    public long timeouts() {
+        return timeouts.get();
+    }
+
+    public long leaksDetected() {
+        return leaks.get();
+    }
+
+    public long peakInUse() {
+        return peakInUse.get();
+    }
+
+    public double averageWaitMicros() {
+        long b = borrows.get();
+        return b == 0 ? 0 : waitNanos.get() / 1000.0 / b;
+    }
+
+    public double maxWaitMicros() {
+        return maxWaitNanos.get() / 1000.0;
+    }
+
+    public long statementCacheHits() {
+        return statementHits.get();
+    }
+
+    public long statementCacheMisses() {
+        return statementMisses.get();
+    }
+
+    public double statementCacheHitRatio() {
+        long total = statementHits.get() + statementMisses.get();
+        return total == 0 ? 0 : (double) statementHits.get() / total;
+    }
+
+    // Share of capacity (maxSize connections) held by borrowers since the pool started, 0..1
+    public double utilization() {
+        long elapsed = System.nanoTime() - startedAt;
+        return elapsed == 0 ? 0 : (double) holdNanos.get() / elapsed / maxSize;
+    }
+
+    public String stats() {
+        return String.format("size=%d inUse=%d idle=%d peakInUse=%d borrows=%d timeouts=%d avgWait=%.0fus maxWait=%.0fus utilization=%.1f%% leaks=%d"
+                        + " stmtCache hits=%d misses=%d evictions=%d hitRatio=%.1f%%",
+                size(), inUseCount(), idleCount(), peakInUse(), borrows(), timeouts(),
+                averageWaitMicros(), maxWaitMicros(), utilization() * 100, leaksDetected(),
+                statementHits.get(), statementMisses.get(), statementEvictions.get(), statementCacheHitRatio() * 100);
+    }
+
+    // Close idle connections now; borrowed ones are closed when they are returned
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        Pooled p;
+        while ((p = idle.pollFirst()) != null) closeQuietly(p);
+    }
+
+    // The Connection handed to callers: close() returns it, anything after that fails
+    private final class Handle implements InvocationHandler {
+        private final Pooled pooled;
+        private boolean returned;
+
+        Handle(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                case "prepareStatement":
+                    if (returned) throw new SQLException("Connection has been returned to the pool");
+                    if (pooled.statements != null && args.length == 1) {
+                        return pooled.statements.prepare((String) args[0], null);
+                    }
+                    if (pooled.statements != null && args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                        return pooled.statements.prepare((String) args[0], (Integer) args[1]);
+                    }
+                    // other prepareStatement variants are not cached
+                    try {
+                        return method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                default:
+                    if (returned) throw new SQLException("Connection has been returned to the pool");
+                    try {
+                        return method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+            }
+        }
+    }
+}
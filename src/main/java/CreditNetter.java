@@ -0,0 +1,148 @@
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CreditNetter.java
+ *
+ * Optional netting stage in front of transfers for destination-heavy traffic. Transfers
+ * are collected for a short window (e.g. 5 ms) after the first one arrives and then applied
+ * together with BankApp.transferBatch(), which locks and updates each account once per
+ * window -- all credits to the same to_account become a single balance update -- while
+ * still writing one `transactions` row per transfer. A hot destination (see HotAccounts)
+ * keeps its main row unlocked and gets the window's credits as one stripe credit.
+ *
+ * Callers get the same per-transfer outcome as BankApp.transfer(), just up to one window
+ * later. Transfers still queued when the worker stops (interrupted, or a submit() racing
+ * close()) complete as failed with reason netter_closed.
+ */
+public class CreditNetter implements AutoCloseable {
+
+    private static final class Pending {
+        final TransferRequest request;
+        final CompletableFuture<TransferResult> future = new CompletableFuture<>();
+
+        Pending(TransferRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final Connection conn;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean stopped; // the worker thread has exited
+
+    // metrics
+    private final AtomicLong windows = new AtomicLong();
+    private final AtomicLong transfers = new AtomicLong();
+    private final AtomicLong destinationUpdates = new AtomicLong();
+
+    // conn is used exclusively by the netting thread
+    public CreditNetter(Connection conn, long windowMillis, int maxBatch) {
+        this.conn = conn;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatch = maxBatch;
+        this.worker = new Thread(this::run, "credit-netter");
+        this.worker.start();
+    }
+
+    public CompletableFuture<TransferResult> submit(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        if (!running) throw new IllegalStateException("netter closed");
+        Pending p = new Pending(new TransferRequest(fromAccount, toAccount, amount, initiatedBy));
+        queue.add(p);
+        if (stopped) failQueued(); // the worker exited between the check above and the add
+        return p.future;
+    }
+
+    // Blocking convenience with the same contract as BankApp.transfer()
+    public boolean transfer(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        return submit(fromAccount, toAccount, amount, initiatedBy).join().success;
+    }
+
+    private void run() {
+        List<Pending> window = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    window.add(first);
+                    long deadline = System.nanoTime() + windowNanos;
+                    long left;
+                    while (window.size() < maxBatch && (left = deadline - System.nanoTime()) > 0) {
+                        Pending p = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (p == null) break;
+                        window.add(p);
+                    }
+                    flush(window);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    // collected but never applied
+                    for (Pending p : window) p.future.complete(new TransferResult(p.request, false, "netter_closed"));
+                    break;
+                } finally {
+                    window.clear();
+                }
+            }
+        } finally {
+            stopped = true;
+            failQueued();
+        }
+    }
+
+    // Fail every transfer still queued; called once the worker thread has stopped
+    private void failQueued() {
+        Pending p;
+        while ((p = queue.poll()) != null) p.future.complete(new TransferResult(p.request, false, "netter_closed"));
+    }
+
+    private void flush(List<Pending> window) {
+        List<TransferRequest> requests = new ArrayList<>(window.size());
+        Set<String> destinations = new HashSet<>();
+        for (Pending p : window) {
+            requests.add(p.request);
+            destinations.add(p.request.toAccount);
+        }
+        List<TransferResult> results = BankApp.transferBatch(conn, requests);
+        for (int i = 0; i < window.size(); i++) window.get(i).future.complete(results.get(i));
+
+        windows.incrementAndGet();
+        transfers.addAndGet(window.size());
+        destinationUpdates.addAndGet(destinations.size());
+    }
+
+    public long windows() {
+        return windows.get();
+    }
+
+    public long transfers() {
+        return transfers.get();
+    }
+
+    // Destination balance updates actually issued (vs one per transfer without netting)
+    public long destinationUpdates() {
+        return destinationUpdates.get();
+    }
+
+    public double averageWindowSize() {
+        long w = windows.get();
+        return w == 0 ? 0 : (double) transfers.get() / w;
+    }
+
+    // Apply everything still queued, then stop
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GroupCommitCoordinator.java
+ *
+ * Group commit for transfers. Concurrent callers enqueue transfers; a committer thread
+ * collects them into an epoch (until maxBatch transfers or maxDelay after the first one),
+ * runs each inside the epoch's transaction behind its own savepoint, and commits ONCE.
+ * Callers are only acknowledged after that commit, i.e. once the whole epoch is durable.
+ *
+ * A transfer that fails (business reason or SQLException) is rolled back to its savepoint
+ * without affecting the rest of the epoch. If the epoch commit itself fails, every transfer
+ * in it is reported as failed. Transfers still queued when the committer stops
+ * (interrupted, or a submit() racing close()) complete as failed with reason
+ * coordinator_closed.
+ *
+ * Lock order: before applying anything, an epoch locks every row its transfers will write,
+ * in the canonical order of BankApp.transfer() -- account rows by account_number (a hot
+ * account's stripes right after its main row; a hot account that is only credited gets its
+ * stripes locked but not its main row), then the owners' user_summary rows by user_id.
+ * The transfers then run in submission order against rows the epoch already holds, so an
+ * epoch never waits on a row out of order and cannot deadlock with single transfers.
+ */
+public class GroupCommitCoordinator implements AutoCloseable {
+
+    private static final class Pending {
+        final TransferRequest request;
+        final TransferMode mode;
+        final CompletableFuture<TransferResult> future = new CompletableFuture<>();
+
+        Pending(TransferRequest request, TransferMode mode) {
+            this.request = request;
+            this.mode = mode;
+        }
+    }
+
+    private final Connection conn;
+    private final long maxDelayNanos;
+    private final int maxBatch;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean running = true;
+    private volatile boolean stopped; // the committer thread has exited
+
+    // metrics
+    private final AtomicLong epochs = new AtomicLong();
+    private final AtomicLong transfers = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+
+    // conn is used exclusively by the committer thread
+    public GroupCommitCoordinator(Connection conn, long maxDelayMicros, int maxBatch) {
+        this.conn = conn;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.maxBatch = maxBatch;
+        this.committer = new Thread(this::run, "group-commit");
+        this.committer.start();
+    }
+
+    public CompletableFuture<TransferResult> submit(String fromAccount, String toAccount, Money amount, long initiatedBy,
+                                                    TransferMode mode) {
+        if (!running) throw new IllegalStateException("coordinator closed");
+        Pending p = new Pending(new TransferRequest(fromAccount, toAccount, amount, initiatedBy), mode);
+        queue.add(p);
+        if (stopped) failQueued(); // the committer exited between the check above and the add
+        return p.future;
+    }
+
+    // Blocking convenience with the same contract as BankApp.transfer()
+    public boolean transfer(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        return submit(fromAccount, toAccount, amount, initiatedBy, TransferMode.PESSIMISTIC).join().success;
+    }
+
+    private void run() {
+        List<Pending> epoch = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    epoch.add(first);
+                    queue.drainTo(epoch, maxBatch - 1);
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    long left;
+                    while (epoch.size() < maxBatch && (left = deadline - System.nanoTime()) > 0) {
+                        Pending p = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (p == null) break;
+                        epoch.add(p);
+                        queue.drainTo(epoch, maxBatch - epoch.size());
+                    }
+                    commitEpoch(epoch);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    // collected but never applied
+                    for (Pending p : epoch) p.future.complete(new TransferResult(p.request, false, "coordinator_closed"));
+                    break;
+                } finally {
+                    epoch.clear();
+                }
+            }
+        } finally {
+            stopped = true;
+            failQueued();
+        }
+    }
+
+    // Fail every transfer still queued; called once the committer thread has stopped
+    private void failQueued() {
+        Pending p;
+        while ((p = queue.poll()) != null) p.future.complete(new TransferResult(p.request, false, "coordinator_closed"));
+    }
+
+    private void commitEpoch(List<Pending> epoch) {
+        List<TransferResult> results = new ArrayList<>(epoch.size());
+        try {
+            conn.setAutoCommit(false); // begin epoch
+            lockEpoch(epoch);
+            for (Pending p : epoch) {
+                TransferRequest r = p.request;
+                Savepoint sp = conn.setSavepoint();
+                String failure;
+                try {
+                    failure = BankApp.applyTransfer(conn, r.fromAccount, r.toAccount, r.amount, r.initiatedBy, p.mode);
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                    failure = "error";
+                }
+                if (failure == null) {
+                    conn.releaseSavepoint(sp);
+                } else {
+                    conn.rollback(sp);
+                }
+                results.add(new TransferResult(r, failure == null, failure));
+            }
+            long t0 = System.nanoTime();
+            conn.commit();
+            commitNanos.addAndGet(System.nanoTime() - t0);
+            BankApp.auditLogger().afterCommit(conn);
+            for (TransferResult res : results) {
+                if (res.success) BankApp.BALANCE_CACHE.invalidateAccounts(res.request.fromAccount, res.request.toAccount);
+            }
+        } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+            }
+            BankApp.auditLogger().afterRollback(conn);
+            ex.printStackTrace();
+            results.clear();
+            for (Pending p : epoch) results.add(new TransferResult(p.request, false, "epoch_rolled_back"));
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {}
+        }
+
+        epochs.incrementAndGet();
+        transfers.addAndGet(epoch.size());
+        // acknowledge only now: the epoch is committed (or definitively failed)
+        for (int i = 0; i < epoch.size(); i++) epoch.get(i).future.complete(results.get(i));
+    }
+
+    // Lock every row the epoch's transfers can write, in the canonical order (see class doc)
+    private void lockEpoch(List<Pending> epoch) throws SQLException {
+        SortedSet<String> accounts = new TreeSet<>();
+        Set<String> sources = new HashSet<>();
+        for (Pending p : epoch) {
+            accounts.add(p.request.fromAccount);
+            accounts.add(p.request.toAccount);
+            sources.add(p.request.fromAccount);
+        }
+        String selectForUpdate = "SELECT balance FROM accounts WHERE account_number = ? FOR UPDATE";
+        try (PreparedStatement ps = conn.prepareStatement(selectForUpdate)) {
+            for (String an : accounts) {
+                boolean hot = HotAccounts.isHot(an);
+                if (!hot || sources.contains(an)) {
+                    ps.setString(1, an);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                    }
+                }
+                if (hot) HotAccounts.lockStripes(conn, an);
+            }
+        }
+        UserSummary.lockOwners(conn, accounts);
+    }
+
+    public long epochs() {
+        return epochs.get();
+    }
+
+    public long transfers() {
+        return transfers.get();
+    }
+
+    public double averageBatchSize() {
+        long e = epochs.get();
+        return e == 0 ? 0 : (double) transfers.get() / e;
+    }
+
+    public double averageCommitMicros() {
+        long e = epochs.get();
+        return e == 0 ? 0 : commitNanos.get() / 1000.0 / e;
+    }
+
+    // Commit everything still queued, then stop
+    @Override
+    public void close() {
+        running = false;
+        try {
+            committer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HotAccounts.java
+ *
+ * Sub-ledger striping for accounts with very high inbound traffic (merchant / collection
+ * accounts). Credits to a hot account do not touch its `accounts` row; they land on one of
+ * N rows in `account_stripes`, picked by the crediting thread, so concurrent credits spread
+ * over N row locks instead of one.
+ *
+ *  - balance of a hot account = accounts.balance + SUM(account_stripes.balance)
+ *  - debits fold the stripes into the main row first (inside the debiting transaction),
+ *    so they always see the correct total
+ *  - a periodic folder keeps the stripes small
+ *
+ * Lock order stays canonical: an account's main row, then its stripes by stripe_no, all at
+ * that account's position in account_number order (see BankApp.transfer()).
+ */
+public class HotAccounts {
+
+    // account_number -> stripe count, for every account that has stripes
+    private static final Map<String, Integer> STRIPES = new ConcurrentHashMap<>();
+
+    private HotAccounts() {}
+
+    // Load the registry of hot accounts from account_stripes
+    static void load(Connection conn) throws SQLException {
+        String q = "SELECT account_number, COUNT(*) FROM account_stripes GROUP BY account_number";
+        try (PreparedStatement ps = conn.prepareStatement(q); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) STRIPES.put(rs.getString(1), rs.getInt(2));
+        }
+    }
+
+    // Turn on striping for an existing account (idempotent; stripes can only be added)
+    static void enable(Connection conn, String accountNumber, int stripeCount) throws SQLException {
+        String sql = "MERGE INTO account_stripes (account_number, stripe_no) KEY (account_number, stripe_no) VALUES (?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < stripeCount; i++) {
+                ps.setString(1, accountNumber);
+                ps.setInt(2, i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        STRIPES.merge(accountNumber, stripeCount, Math::max);
+        BankApp.audit(conn, new AuditEvent(null, AuditAction.ENABLE_HOT_ACCOUNT, accountNumber, null, null, "stripes=" + stripeCount));
+    }
+
+    static boolean isHot(String accountNumber) {
+        return STRIPES.containsKey(accountNumber);
+    }
+
+    // Every hot account, in account_number (lock) order
+    static java.util.SortedSet<String> hotAccounts() {
+        return new java.util.TreeSet<>(STRIPES.keySet());
+    }
+
+    // Relative credit to the calling thread's stripe; caller owns the transaction
+    static boolean credit(Connection conn, String accountNumber, Money amount) throws SQLException {
+        int stripes = STRIPES.get(accountNumber);
+        int stripe = (int) (Thread.currentThread().getId() % stripes);
+        String sql = "UPDATE account_stripes SET balance = balance + ? WHERE account_number = ? AND stripe_no = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amount.toBigDecimal());
+            ps.setString(2, accountNumber);
+            ps.setInt(3, stripe);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    // Lock all stripes of an account, by stripe_no; caller owns the transaction and follows the
+    // canonical order (the account's main row, if it locks it at all, comes first)
+    static void lockStripes(Connection conn, String accountNumber) throws SQLException {
+        String lockStripes = "SELECT stripe_no FROM account_stripes WHERE account_number = ? ORDER BY stripe_no FOR UPDATE";
+        try (PreparedStatement ps = conn.prepareStatement(lockStripes)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // each row read is locked until the transaction ends
+                }
+            }
+        }
+    }
+
+    // Move all stripe balances into the main row and return the amount moved.
+    // The caller must already hold the lock on the account's main row and owns the transaction.
+    static Money foldLocked(Connection conn, String accountNumber) throws SQLException {
+        String lockStripes = "SELECT balance FROM account_stripes WHERE account_number = ? ORDER BY stripe_no FOR UPDATE";
+        Money sum = Money.ZERO;
+        try (PreparedStatement ps = conn.prepareStatement(lockStripes)) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) sum = sum.plus(Money.fromBigDecimal(rs.getBigDecimal(1)));
+            }
+        }
+        if (!sum.isPositive()) return sum;
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE account_stripes SET balance = 0.00 WHERE account_number = ?")) {
+            ps.setString(1, accountNumber);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE account_number = ?")) {
+            ps.setBigDecimal(1, sum.toBigDecimal());
+            ps.setString(2, accountNumber);
+            ps.executeUpdate();
+        }
+        return sum;
+    }
+
+    // Fold one hot account in its own transaction
+    static void fold(Connection conn, String accountNumber) throws SQLException {
+        try {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("SELECT balance FROM accounts WHERE account_number = ? FOR UPDATE")) {
+                ps.setString(1, accountNumber);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        Money moved = foldLocked(conn, accountNumber);
+                        if (moved.isPositive()) UserSummary.applyDeltas(conn, java.util.Collections.singletonMap(accountNumber, moved));
+                    }
+                }
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // Fold every hot account, one transaction each
+    static void foldAll(Connection conn) throws SQLException {
+        for (String an : STRIPES.keySet()) fold(conn, an);
+    }
+
+    // Periodically fold all hot accounts on a dedicated connection; shut the returned
+    // scheduler down to stop it (the connection is closed at JVM exit)
+    static ScheduledExecutorService startFolder(String jdbcUrl, String user, String pass, long intervalMs) throws SQLException {
+        Connection conn = DriverManager.getConnection(jdbcUrl, user, pass);
+        ScheduledExecutorService folder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-account-folder");
+            t.setDaemon(true);
+            return t;
+        });
+        folder.scheduleWithFixedDelay(() -> {
+            try {
+                foldAll(conn);
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {}
+        }));
+        return folder;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IdempotencyCache.java
+ *
+ * Bounded, time-expiring map of idempotency keys whose transfers have COMMITTED to the
+ * fingerprint (from, to, amount) of that transfer. A retry carrying a key found here with
+ * the same fingerprint is answered as a success straight away, without borrowing a
+ * connection or locking any rows; a different fingerprint is a conflict -- the key was
+ * reused for another transfer.
+ *
+ * Only successes are cached: a transfer that failed (e.g. insufficient funds) may be
+ * retried with the same key and run for real. The cache is only a shortcut -- the unique
+ * transactions.idempotency_key column stays authoritative for keys that were evicted,
+ * expired, or committed by another JVM.
+ */
+public class IdempotencyCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private static final class Entry {
+        final String fingerprint;
+        final long expiry; // System.nanoTime()
+
+        Entry(String fingerprint, long expiry) {
+            this.fingerprint = fingerprint;
+            this.expiry = expiry;
+        }
+    }
+
+    // key -> committed transfer; insertion order == expiry order
+    private final LinkedHashMap<String, Entry> committed = new LinkedHashMap<>();
+
+    // metrics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    // Identity of a transfer as far as its idempotency key is concerned
+    public static String fingerprint(String fromAccount, String toAccount, Money amount) {
+        return fromAccount + '|' + toAccount + '|' + amount.minor();
+    }
+
+    // Fingerprint of the transfer committed with this key, null if none is known
+    public String get(String key) {
+        Entry e;
+        synchronized (this) {
+            e = committed.get(key);
+            if (e != null && System.nanoTime() - e.expiry > 0) {
+                committed.remove(key);
+                e = null;
+            }
+        }
+        (e != null ? hits : misses).incrementAndGet();
+        return e != null ? e.fingerprint : null;
+    }
+
+    // Record a key with its transfer's fingerprint after the transfer committed
+    public synchronized void put(String key, String fingerprint) {
+        long now = System.nanoTime();
+        committed.remove(key); // re-insert at the tail with a fresh expiry
+        committed.put(key, new Entry(fingerprint, now + ttlNanos));
+        Iterator<Map.Entry<String, Entry>> it = committed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (committed.size() <= maxEntries && now - eldest.getValue().expiry <= 0) break;
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        committed.clear();
+    }
+
+    public synchronized int size() {
+        return committed.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+}
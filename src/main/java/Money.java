@@ -0,0 +1,84 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money.java
+ *
+ * Fixed-point amount in minor units (paise / cents, 2 decimal places) backed by a single
+ * long. All arithmetic and comparisons are plain long operations; the only conversion to
+ * BigDecimal happens at the JDBC boundary (toBigDecimal() / fromBigDecimal()).
+ *
+ * Parsing never goes through double or String.format, so it is exact and independent of
+ * the default locale.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    // Parse a plain decimal string such as "3000" or "3000.50"; more than 2 decimals is an error
+    public static Money of(String amount) {
+        return fromBigDecimal(new BigDecimal(amount));
+    }
+
+    // Column value -> Money (DECIMAL(18,2) columns always have scale 2)
+    public static Money fromBigDecimal(BigDecimal amount) {
+        return ofMinor(amount.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    public long minor() {
+        return minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, 2);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    public boolean isPositive() {
+        return minor > 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minor < other.minor;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minor == minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    // "3000.50", "-0.05"
+    @Override
+    public String toString() {
+        long abs = Math.abs(minor);
+        long frac = abs % 100;
+        return (minor < 0 ? "-" : "") + (abs / 100) + (frac < 10 ? ".0" : ".") + frac;
+    }
+}
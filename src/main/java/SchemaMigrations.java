@@ -0,0 +1,324 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SchemaMigrations.java
+ *
+ * Versioned schema changes. Each migration has a version number and runs once: applied
+ * versions are recorded in schema_version, and migrate() runs the missing ones in order.
+ * To change the schema, append a migration with the next version -- never edit one that
+ * has shipped.
+ *
+ * H2 commits DDL implicitly, so a migration interrupted halfway is run again from the
+ * start. Migrations therefore use IF [NOT] EXISTS throughout; that also lets databases
+ * created before schema_version existed pass through every migration unharmed.
+ */
+public final class SchemaMigrations {
+
+    private interface Step {
+        void apply(Statement st) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "users, accounts, transactions, audit_logs", st -> {
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS users (" +
+                " user_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                " full_name VARCHAR(200) NOT NULL," +
+                " email VARCHAR(255) UNIQUE NOT NULL," +
+                " role VARCHAR(50) NOT NULL," +
+                " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")"
+            );
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS accounts (" +
+                " account_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                " user_id BIGINT NOT NULL," +
+                " account_number VARCHAR(50) UNIQUE NOT NULL," +
+                " type VARCHAR(50) NOT NULL," +
+                " balance DECIMAL(18,2) DEFAULT 0.00," +
+                " status VARCHAR(20) DEFAULT 'ACTIVE'," +
+                " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                " FOREIGN KEY (user_id) REFERENCES users(user_id)" +
+                ")"
+            );
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS transactions (" +
+                " txn_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                " txn_uuid VARCHAR(36) NOT NULL," +
+                " from_account VARCHAR(50)," +
+                " to_account VARCHAR(50)," +
+                " amount DECIMAL(18,2) NOT NULL," +
+                " currency CHAR(3) DEFAULT 'INR'," +
+                " txn_type VARCHAR(50) NOT NULL," +
+                " status VARCHAR(50) NOT NULL," +
+                " initiated_by BIGINT," +
+                " initiated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                " remarks VARCHAR(500)" +
+                ")"
+            );
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS audit_logs (" +
+                " id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                " user_id BIGINT," +
+                " action VARCHAR(500)," +
+                " meta VARCHAR(2000)," +
+                " created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")"
+            );
+        }),
+
+        // optimistic-concurrency version (TransferMode.OPTIMISTIC)
+        new Migration(2, "accounts.version", st ->
+            st.executeUpdate("ALTER TABLE accounts ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL")),
+
+        // credit stripes of hot accounts (see HotAccounts)
+        new Migration(3, "account_stripes", st ->
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS account_stripes (" +
+                " account_number VARCHAR(50) NOT NULL," +
+                " stripe_no INT NOT NULL," +
+                " balance DECIMAL(18,2) DEFAULT 0.00 NOT NULL," +
+                " PRIMARY KEY (account_number, stripe_no)," +
+                " FOREIGN KEY (account_number) REFERENCES accounts(account_number)" +
+                ")"
+            )),
+
+        // client-supplied idempotency key of a committed transfer
+        new Migration(4, "transactions.idempotency_key", st -> {
+            st.executeUpdate("ALTER TABLE transactions ADD COLUMN IF NOT EXISTS idempotency_key VARCHAR(64)");
+            st.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS ux_transactions_idempotency_key ON transactions(idempotency_key)");
+        }),
+
+        // time-ordered txn_ref (TxnIdGenerator) replaces the random txn_uuid, which is only kept
+        // for rows written before txn_ref existed
+        new Migration(5, "transactions.txn_ref", st -> {
+            st.executeUpdate("ALTER TABLE transactions ADD COLUMN IF NOT EXISTS txn_ref BIGINT");
+            st.executeUpdate("ALTER TABLE transactions ALTER COLUMN txn_uuid SET NULL");
+            st.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS ux_transactions_txn_ref ON transactions(txn_ref)");
+        }),
+
+        // per-account history and most-recent-first listings without full scans; time columns
+        // are descending to match the ORDER BY ... DESC LIMIT n queries
+        new Migration(6, "ledger and audit indexes", st -> {
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_transactions_from_initiated ON transactions(from_account, initiated_at DESC)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_transactions_to_initiated ON transactions(to_account, initiated_at DESC)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_transactions_initiated ON transactions(initiated_at DESC)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audit_logs_created ON audit_logs(created_at DESC)");
+        }),
+
+        // transactional outbox of AuditLogger.Mode.OUTBOX; deliberately without secondary indexes
+        new Migration(7, "audit_outbox", st ->
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS audit_outbox (" +
+                " id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                " user_id BIGINT," +
+                " action VARCHAR(500)," +
+                " meta VARCHAR(2000)," +
+                " created_at TIMESTAMP NOT NULL" +
+                ")"
+            )),
+
+        // typed audit columns (AuditEvent) with per-account and per-actor indexes; rows
+        // written before them get the columns parsed from their meta text
+        new Migration(8, "typed audit columns", st -> {
+            for (String table : new String[] {"audit_logs", "audit_outbox"}) {
+                st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS account_ref VARCHAR(50)");
+                st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS counterparty_ref VARCHAR(50)");
+                st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS amount DECIMAL(18,2)");
+            }
+            backfillAuditColumns(st.getConnection());
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audit_logs_account ON audit_logs(account_ref, created_at DESC)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audit_logs_counterparty ON audit_logs(counterparty_ref, created_at DESC)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_audit_logs_user ON audit_logs(user_id, created_at DESC)");
+        }),
+
+        // per-user portfolio summary (see UserSummary), built once from accounts and
+        // transactions for the users that exist at migration time
+        new Migration(9, "user_summary", st -> {
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS user_summary (" +
+                " user_id BIGINT PRIMARY KEY," +
+                " account_count INT DEFAULT 0 NOT NULL," +
+                " total_balance DECIMAL(18,2) DEFAULT 0.00 NOT NULL," +
+                " last_activity TIMESTAMP," +
+                " FOREIGN KEY (user_id) REFERENCES users(user_id)" +
+                ")"
+            );
+            st.executeUpdate(
+                "INSERT INTO user_summary (user_id, account_count, total_balance, last_activity)" +
+                " SELECT u.user_id, COUNT(a.account_id), COALESCE(SUM(a.balance), 0.00)," +
+                " CASE WHEN MAX(a.created_at) > u.created_at THEN MAX(a.created_at) ELSE u.created_at END" +
+                " FROM users u LEFT JOIN accounts a ON a.user_id = u.user_id" +
+                " WHERE u.user_id NOT IN (SELECT user_id FROM user_summary)" +
+                " GROUP BY u.user_id, u.created_at"
+            );
+            for (String side : new String[] {"from_account", "to_account"}) {
+                st.executeUpdate(
+                    "UPDATE user_summary s SET last_activity = (" +
+                    "SELECT MAX(t.initiated_at) FROM accounts a JOIN transactions t ON t." + side + " = a.account_number" +
+                    " WHERE a.user_id = s.user_id AND t.status = 'SUCCESS')" +
+                    " WHERE (SELECT MAX(t.initiated_at) FROM accounts a JOIN transactions t ON t." + side + " = a.account_number" +
+                    " WHERE a.user_id = s.user_id AND t.status = 'SUCCESS') > COALESCE(s.last_activity, TIMESTAMP '1970-01-01 00:00:00')"
+                );
+            }
+        }),
+
+        // balance checkpoints for point-in-time queries (see BalanceCheckpoints), with a txn_id
+        // watermark per snapshot row; the (account, txn_id) indexes bound the replay between
+        // two watermarks
+        new Migration(10, "balance checkpoints", st -> {
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS balance_checkpoints (" +
+                " checkpoint_id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                " started_at TIMESTAMP NOT NULL," +
+                " taken_at TIMESTAMP" + // NULL until every chunk is copied
+                ")"
+            );
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS balance_snapshots (" +
+                " account_number VARCHAR(50) NOT NULL," +
+                " checkpoint_id BIGINT NOT NULL," +
+                " balance DECIMAL(18,2) NOT NULL," +
+                " max_txn_id BIGINT NOT NULL," +
+                " PRIMARY KEY (account_number, checkpoint_id)," +
+                " FOREIGN KEY (checkpoint_id) REFERENCES balance_checkpoints(checkpoint_id)" +
+                ")"
+            );
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_balance_checkpoints_taken ON balance_checkpoints(taken_at)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_transactions_from_txn ON transactions(from_account, txn_id)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_transactions_to_txn ON transactions(to_account, txn_id)");
+        })
+    );
+
+    private SchemaMigrations() {}
+
+    // Bring the schema up to the latest version
+    static void migrate(Connection conn) throws SQLException {
+        migrate(conn, latestVersion());
+    }
+
+    // Apply missing migrations up to and including targetVersion
+    static void migrate(Connection conn, int targetVersion) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS schema_version (" +
+                " version INT PRIMARY KEY," +
+                " description VARCHAR(200) NOT NULL," +
+                " applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")"
+            );
+        }
+        int current = currentVersion(conn);
+        for (Migration m : MIGRATIONS) {
+            if (m.version <= current || m.version > targetVersion) continue;
+            try {
+                conn.setAutoCommit(false);
+                try (Statement st = conn.createStatement()) {
+                    m.step.apply(st);
+                }
+                try (PreparedStatement ps = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                    ps.setInt(1, m.version);
+                    ps.setString(2, m.description);
+                    ps.executeUpdate();
+                }
+                conn.commit();
+                System.out.println("Applied schema migration " + m.version + ": " + m.description);
+            } catch (SQLException ex) {
+                try {
+                    conn.rollback();
+                } catch (SQLException e2) {
+                    e2.printStackTrace();
+                }
+                throw ex;
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException ignore) {}
+            }
+        }
+    }
+
+    // Fill account_ref / counterparty_ref / amount of pre-typed audit rows from their meta
+    // ("from=..;to=..;amount=.." and "account_number=..;initial_balance=.."), in id order
+    private static void backfillAuditColumns(Connection conn) throws SQLException {
+        String select = "SELECT id, meta FROM audit_logs WHERE id > ? AND account_ref IS NULL" +
+                " AND action IN ('TRANSFER', 'CREATE_ACCOUNT', 'ENABLE_HOT_ACCOUNT') ORDER BY id LIMIT 10000";
+        String update = "UPDATE audit_logs SET account_ref = ?, counterparty_ref = ?, amount = ? WHERE id = ?";
+        long lastId = 0;
+        long filled = 0;
+        try (PreparedStatement sel = conn.prepareStatement(select); PreparedStatement upd = conn.prepareStatement(update)) {
+            while (true) {
+                int rows = 0;
+                sel.setLong(1, lastId);
+                try (ResultSet rs = sel.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getLong(1);
+                        rows++;
+                        Map<String, String> fields = new HashMap<>();
+                        String meta = rs.getString(2);
+                        for (String kv : meta == null ? new String[0] : meta.split(";")) {
+                            int eq = kv.indexOf('=');
+                            if (eq > 0) fields.put(kv.substring(0, eq), kv.substring(eq + 1));
+                        }
+                        String account = fields.containsKey("from") ? fields.get("from") : fields.get("account_number");
+                        if (account == null) continue;
+                        String amount = fields.containsKey("amount") ? fields.get("amount") : fields.get("initial_balance");
+                        upd.setString(1, account);
+                        upd.setString(2, fields.get("to"));
+                        upd.setBigDecimal(3, parseAmount(amount));
+                        upd.setLong(4, lastId);
+                        upd.addBatch();
+                        filled++;
+                    }
+                }
+                upd.executeBatch();
+                if (rows == 0) break;
+            }
+        }
+        if (filled > 0) System.out.println("Backfilled typed columns of " + filled + " audit rows");
+    }
+
+    // null if absent or not a valid amount
+    private static BigDecimal parseAmount(String s) {
+        if (s == null) return null;
+        try {
+            return Money.of(s).toBigDecimal();
+        } catch (RuntimeException ex) { // NumberFormatException, ArithmeticException
+            return null;
+        }
+    }
+
+    // Highest applied version, 0 for a database that has none
+    static int currentVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+}
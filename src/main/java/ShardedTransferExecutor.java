@@ -0,0 +1,120 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardedTransferExecutor.java
+ *
+ * Routes transfers to shards by hashing the account number. Every shard is a single
+ * thread with its own connection and is the only writer of the accounts that hash to it,
+ * so transfers never wait on each other's account row locks in H2.
+ *
+ * user_summary rows are not sharded: a user's accounts can hash to different shards, so
+ * two shards (or a shard and any other writer) may briefly wait on the same summary row.
+ * Summary rows are taken last and in user_id order (see UserSummary), so such a wait
+ * always ends when the other transaction commits and cannot deadlock.
+ *
+ *  - same-shard transfer: runs on that shard's thread
+ *  - cross-shard transfer: ordered two-shard handoff. The lower-numbered shard parks the
+ *    higher one (a task on its queue that blocks until released), runs the transfer as one
+ *    transaction on its own connection, then releases it. A shard only ever waits for a
+ *    higher-numbered shard, so the handoff cannot deadlock.
+ *
+ * Transfers use TransferMode.CONDITIONAL: with exclusive ownership of the account rows
+ * there is nothing to lock them against, so the two guarded UPDATEs are all that is needed.
+ */
+public class ShardedTransferExecutor implements AutoCloseable {
+
+    private final ExecutorService[] shards;
+    private final Connection[] conns;
+
+    public ShardedTransferExecutor(String jdbcUrl, String user, String pass, int shardCount) throws SQLException {
+        shards = new ExecutorService[shardCount];
+        conns = new Connection[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final int shard = i;
+            conns[i] = DriverManager.getConnection(jdbcUrl, user, pass);
+            shards[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "transfer-shard-" + shard);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    int shardOf(String accountNumber) {
+        return (accountNumber.hashCode() & 0x7fffffff) % shards.length;
+    }
+
+    // Queue a transfer on its owning shard(s); the future completes with BankApp.transfer()'s result
+    public CompletableFuture<Boolean> submit(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        int a = shardOf(fromAccount);
+        int b = shardOf(toAccount);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (a == b) {
+            shards[a].execute(() -> result.complete(
+                    BankApp.transfer(conns[a], fromAccount, toAccount, amount, initiatedBy, TransferMode.CONDITIONAL)));
+            return result;
+        }
+
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+        shards[lo].execute(() -> {
+            CountDownLatch parked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            shards[hi].execute(() -> {
+                parked.countDown();
+                awaitUninterruptibly(release);
+            });
+            awaitUninterruptibly(parked);
+            try {
+                result.complete(BankApp.transfer(conns[lo], fromAccount, toAccount, amount, initiatedBy, TransferMode.CONDITIONAL));
+            } finally {
+                release.countDown();
+            }
+        });
+        return result;
+    }
+
+    // Blocking convenience with the same contract as BankApp.transfer()
+    public boolean transfer(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        return submit(fromAccount, toAccount, amount, initiatedBy).join();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Finish queued transfers, then close the shard connections. Shards are drained lowest
+    // first because a shard's cross-shard tasks still need to park the higher shards.
+    @Override
+    public void close() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+            try {
+                shard.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Connection conn : conns) {
+            try {
+                conn.close();
+            } catch (SQLException ignore) {}
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StatementCache.java
+ *
+ * LRU cache of PreparedStatements for ONE physical connection, keyed by SQL text (plus the
+ * auto-generated-keys flag). Used by ConnectionPool: prepareStatement() on a pooled
+ * connection returns a cached statement wrapped so that close() only clears its parameters
+ * and batch and hands it back to the cache.
+ *
+ * A statement is lent to one caller at a time; preparing the same SQL again while it is
+ * still open gets a fresh, uncached statement. Evicted statements are closed (on return,
+ * if they are lent out at the time).
+ *
+ * Not thread-safe: a pooled connection is only used by its current borrower.
+ */
+final class StatementCache {
+
+    private static final class Cached {
+        final PreparedStatement statement;
+        boolean lentOut;
+        boolean evicted;
+
+        Cached(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    private final Connection physical;
+    private final LinkedHashMap<String, Cached> entries;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    StatementCache(Connection physical, int capacity, AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+        this.physical = physical;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                if (size() <= capacity) return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    // autoGeneratedKeys is a Statement.RETURN_GENERATED_KEYS / NO_GENERATED_KEYS value, or null
+    PreparedStatement prepare(String sql, Integer autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + ":" + sql;
+        Cached e = entries.get(key);
+        if (e != null && !e.lentOut && e.statement.isClosed()) {
+            entries.remove(key);
+            e = null;
+        }
+        if (e != null && !e.lentOut) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            PreparedStatement ps = autoGeneratedKeys == null
+                    ? physical.prepareStatement(sql)
+                    : physical.prepareStatement(sql, autoGeneratedKeys);
+            if (e != null) return ps; // same SQL already lent out: caller gets a plain, uncached statement
+            e = new Cached(ps);
+            entries.put(key, e);
+        }
+        e.lentOut = true;
+        return lend(e);
+    }
+
+    private void evict(Cached e) {
+        evictions.incrementAndGet();
+        e.evicted = true;
+        if (!e.lentOut) closeQuietly(e.statement);
+    }
+
+    // Close every cached statement (the physical connection is going away)
+    void clear() {
+        for (Cached e : entries.values()) closeQuietly(e.statement);
+        entries.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignore) {}
+    }
+
+    // Wrapper whose close() gives the statement back instead of closing it
+    private PreparedStatement lend(Cached e) {
+        final boolean[] returned = {false};
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!returned[0]) {
+                                returned[0] = true;
+                                e.lentOut = false;
+                                if (e.evicted) {
+                                    e.statement.close();
+                                } else {
+                                    e.statement.clearParameters();
+                                    e.statement.clearBatch();
+                                }
+                            }
+                            return null;
+                        case "isClosed":
+                            return returned[0] || e.statement.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            if (returned[0]) throw new SQLException("Statement has been closed");
+                            try {
+                                return method.invoke(e.statement, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            }
+                    }
+                });
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * StatementExport.java
+ *
+ * Streams transaction history (all of it, or every row touching a set of accounts) as CSV
+ * or JSON Lines to a byte channel, in txn_id order. Rows come from a forward-only,
+ * read-only ResultSet with a fetch size, each row is formatted into one reused
+ * StringBuilder and encoded into a fixed direct buffer that is drained to the channel
+ * when full -- memory use does not depend on the number of rows.
+ *
+ * H2 only streams results lazily with LAZY_QUERY_EXECUTION, which export() switches on
+ * for its session while it runs and off again before returning (the connection may be a
+ * pooled one); without it H2 spills large results to a temp file instead.
+ *
+ * Run: java -cp .:h2.jar StatementExport csv|jsonl out-file [account ...]
+ */
+public final class StatementExport {
+
+    public enum Format { CSV, JSONL }
+
+    static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final String COLUMNS = "txn_id, txn_ref, initiated_at, from_account, to_account, amount, currency,"
+            + " txn_type, status, initiated_by, remarks";
+
+    private StatementExport() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: StatementExport csv|jsonl out-file [account ...]");
+            return;
+        }
+        Format format = Format.valueOf(args[0].toUpperCase());
+        List<String> accounts = Arrays.asList(args).subList(2, args.length);
+        try (Connection conn = DriverManager.getConnection(BankApp.JDBC_URL, BankApp.DB_USER, BankApp.DB_PASS);
+             FileChannel out = FileChannel.open(Paths.get(args[1]), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long t0 = System.nanoTime();
+            long rows = export(conn, accounts, format, out);
+            System.out.printf("Exported %d rows to %s in %.1f s%n", rows, args[1], (System.nanoTime() - t0) / 1e9);
+        }
+    }
+
+    // Whole ledger
+    public static long export(Connection conn, Format format, WritableByteChannel out) throws SQLException, IOException {
+        return export(conn, Collections.<String>emptyList(), format, out);
+    }
+
+    // Rows where any of `accounts` is the source or destination (all rows if empty); returns the row count
+    public static long export(Connection conn, List<String> accounts, Format format, WritableByteChannel out)
+            throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM transactions");
+        if (!accounts.isEmpty()) {
+            String in = String.join(", ", Collections.nCopies(accounts.size(), "?"));
+            sql.append(" WHERE from_account IN (").append(in).append(") OR to_account IN (").append(in).append(")");
+        }
+        sql.append(" ORDER BY txn_id");
+
+        boolean lazy = setLazyResults(conn, true);
+        Writer w = new Writer(out);
+        long rows = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < accounts.size(); i++) {
+                ps.setString(1 + i, accounts.get(i));
+                ps.setString(1 + accounts.size() + i, accounts.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                StringBuilder line = new StringBuilder(256);
+                if (format == Format.CSV) {
+                    line.append("txn_id,txn_ref,initiated_at,from_account,to_account,amount,currency,txn_type,status,initiated_by,remarks\n");
+                    w.write(line);
+                }
+                while (rs.next()) {
+                    line.setLength(0);
+                    if (format == Format.CSV) csvRow(rs, line);
+                    else jsonRow(rs, line);
+                    w.write(line);
+                    rows++;
+                }
+            }
+        } finally {
+            if (lazy) setLazyResults(conn, false);
+        }
+        w.flush();
+        return rows;
+    }
+
+    // Best effort: not every H2 version (or database) knows the setting; true if it was applied
+    private static boolean setLazyResults(Connection conn, boolean on) {
+        try (Statement st = conn.createStatement()) {
+            st.execute("SET LAZY_QUERY_EXECUTION " + (on ? "TRUE" : "FALSE"));
+            return true;
+        } catch (SQLException ignore) {
+            return false;
+        }
+    }
+
+    private static void csvRow(ResultSet rs, StringBuilder sb) throws SQLException {
+        sb.append(rs.getLong(1)).append(',');
+        sb.append(rs.getLong(2)).append(',');
+        sb.append(rs.getTimestamp(3)).append(',');
+        csvField(sb, rs.getString(4)).append(',');
+        csvField(sb, rs.getString(5)).append(',');
+        sb.append(rs.getBigDecimal(6).toPlainString()).append(',');
+        csvField(sb, rs.getString(7)).append(',');
+        csvField(sb, rs.getString(8)).append(',');
+        csvField(sb, rs.getString(9)).append(',');
+        sb.append(rs.getLong(10)).append(',');
+        csvField(sb, rs.getString(11)).append('\n');
+    }
+
+    // RFC 4180: quote fields containing separators, quotes or line breaks; NULL is empty
+    private static StringBuilder csvField(StringBuilder sb, String s) {
+        if (s == null) return sb;
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) return sb.append(s);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    private static void jsonRow(ResultSet rs, StringBuilder sb) throws SQLException {
+        sb.append("{\"txnId\":").append(rs.getLong(1));
+        sb.append(",\"txnRef\":").append(rs.getLong(2));
+        sb.append(",\"initiatedAt\":");
+        jsonString(sb, String.valueOf(rs.getTimestamp(3)));
+        sb.append(",\"fromAccount\":");
+        jsonString(sb, rs.getString(4));
+        sb.append(",\"toAccount\":");
+        jsonString(sb, rs.getString(5));
+        sb.append(",\"amount\":").append(rs.getBigDecimal(6).toPlainString());
+        sb.append(",\"currency\":");
+        jsonString(sb, rs.getString(7));
+        sb.append(",\"txnType\":");
+        jsonString(sb, rs.getString(8));
+        sb.append(",\"status\":");
+        jsonString(sb, rs.getString(9));
+        sb.append(",\"initiatedBy\":").append(rs.getLong(10));
+        sb.append(",\"remarks\":");
+        jsonString(sb, rs.getString(11));
+        sb.append("}\n");
+    }
+
+    private static void jsonString(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c == '\n') sb.append("\\n");
+            else if (c == '\r') sb.append("\\r");
+            else if (c == '\t') sb.append("\\t");
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // UTF-8 encoder over one direct buffer, drained to the channel whenever it fills
+    private static final class Writer {
+        private final WritableByteChannel out;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        Writer(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult r = encoder.encode(chars, buf, false);
+                if (r.isOverflow()) drain();
+                else if (r.isUnderflow()) break;
+                else r.throwException();
+            }
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * TransferMode.java
+ *
+ * How BankApp.transfer() updates the two account balances.
+ */
+public enum TransferMode {
+
+    // SELECT ... FOR UPDATE both rows, compare in Java, write the new balances back
+    // (2 SELECTs + 2 UPDATEs). The default.
+    PESSIMISTIC,
+
+    // Guarded relative UPDATEs only: debit "WHERE balance >= ? AND status = 'ACTIVE'",
+    // credit "balance = balance + ?" (2 UPDATEs), update counts detect failures.
+    CONDITIONAL,
+
+    // Unlocked reads, then compare-and-set on accounts.version with jittered, bounded
+    // retries; falls back to PESSIMISTIC once the retries are used up. Best for
+    // low-contention workloads.
+    OPTIMISTIC
+}
@@ -0,0 +1,24 @@
+/**
+ * TransferRequest.java
+ *
+ * One internal transfer, as submitted to BankApp.transferBatch().
+ */
+public class TransferRequest {
+
+    final String fromAccount;
+    final String toAccount;
+    final Money amount;
+    final long initiatedBy;
+
+    public TransferRequest(String fromAccount, String toAccount, Money amount, long initiatedBy) {
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.initiatedBy = initiatedBy;
+    }
+
+    @Override
+    public String toString() {
+        return fromAccount + " -> " + toAccount + " : " + amount;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * TransferResult.java
+ *
+ * Outcome of a single transfer. `reason` matches the remarks written to the
+ * transactions table for failures (e.g. "insufficient_funds").
+ */
+public class TransferResult {
+
+    final TransferRequest request;
+    final boolean success;
+    final String reason;
+
+    TransferResult(TransferRequest request, boolean success, String reason) {
+        this.request = request;
+        this.success = success;
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+        return request + (success ? " OK" : " FAILED (" + reason + ")");
+    }
+}
@@ -0,0 +1,172 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserSummary.java
+ *
+ * Per-user portfolio summary (account count, total balance, last activity) kept in the
+ * user_summary table, so a dashboard read is one primary-key lookup however many accounts
+ * and transactions the user has. It is maintained incrementally in the same transaction as
+ * the change: createUser() inserts the row, createAccount() bumps it, and every transfer
+ * path applies its balance deltas (BankApp.applyTransfer(), transferBatch(), BalanceEngine's
+ * flush, HotAccounts.fold()).
+ *
+ * total_balance always equals SUM(accounts.balance) of the user's accounts -- main rows
+ * only. Credits parked on the stripes of a hot account reach it when they are folded, so
+ * the summary never turns a hot account's owner into a hot row.
+ *
+ * Summary rows are locked after all account rows of the transaction and in user_id order,
+ * so the canonical lock order (accounts by account_number, then summaries by user_id)
+ * holds and concurrent transfers cannot deadlock on them. A transaction that applies
+ * several transfers one by one (a group-commit epoch) takes them all up front with
+ * lockOwners().
+ */
+public final class UserSummary {
+
+    // account_number -> owning user_id; an account never changes owner
+    private static final int MAX_CACHED_OWNERS = 1_000_000;
+    private static final Map<String, Long> OWNERS = new ConcurrentHashMap<>();
+
+    // A change that leaves a user's total as it was (a transfer between two of their own
+    // accounts) only refreshes last_activity if it is older than this, so such transfers
+    // do not all queue on the user's summary row
+    static final long ACTIVITY_RESOLUTION_MS = 1_000;
+
+    public final long userId;
+    public final int accountCount;
+    public final Money totalBalance;
+    public final Timestamp lastActivity;
+
+    UserSummary(long userId, int accountCount, Money totalBalance, Timestamp lastActivity) {
+        this.userId = userId;
+        this.accountCount = accountCount;
+        this.totalBalance = totalBalance;
+        this.lastActivity = lastActivity;
+    }
+
+    // Summary of one user, null if there is no such user
+    public static UserSummary get(Connection conn, long userId) throws SQLException {
+        String q = "SELECT account_count, total_balance, last_activity FROM user_summary WHERE user_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(q)) {
+            ps.setLong(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return new UserSummary(userId, rs.getInt(1), Money.fromBigDecimal(rs.getBigDecimal(2)), rs.getTimestamp(3));
+            }
+        }
+    }
+
+    // Same, on a connection borrowed from the pool
+    public static UserSummary get(ConnectionPool pool, long userId) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return get(conn, userId);
+        }
+    }
+
+    // New user; caller owns the transaction
+    static void userCreated(Connection conn, long userId) throws SQLException {
+        String sql = "INSERT INTO user_summary (user_id, account_count, total_balance, last_activity) VALUES (?, 0, 0.00, CURRENT_TIMESTAMP)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, userId);
+            ps.executeUpdate();
+        }
+    }
+
+    // New account with its opening balance; caller owns the transaction
+    static void accountCreated(Connection conn, long userId, String accountNumber, Money initialBalance) throws SQLException {
+        String sql = "UPDATE user_summary SET account_count = account_count + 1, total_balance = total_balance + ?," +
+                " last_activity = CURRENT_TIMESTAMP WHERE user_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, initialBalance.toBigDecimal());
+            ps.setLong(2, userId);
+            ps.executeUpdate();
+        }
+        cacheOwner(accountNumber, userId);
+    }
+
+    // One transfer: `debit` left fromAccount's main row, `credit` reached toAccount's (they
+    // differ around hot accounts); caller owns the transaction and holds both account rows
+    static void transferred(Connection conn, String fromAccount, String toAccount, Money debit, Money credit) throws SQLException {
+        Map<String, Money> deltas = new TreeMap<>();
+        deltas.put(fromAccount, Money.ZERO.minus(debit));
+        deltas.merge(toAccount, credit, Money::plus);
+        applyDeltas(conn, deltas);
+    }
+
+    // Balance change per account (a zero delta still counts as activity). Deltas are summed
+    // per owner and written in user_id order; unknown accounts are ignored. Caller owns the
+    // transaction and already holds the account rows.
+    static void applyDeltas(Connection conn, Map<String, Money> deltasByAccount) throws SQLException {
+        Map<Long, Money> byUser = new TreeMap<>();
+        for (Map.Entry<String, Money> e : deltasByAccount.entrySet()) {
+            Long owner = owner(conn, e.getKey());
+            if (owner != null) byUser.merge(owner, e.getValue(), Money::plus);
+        }
+        String changed = "UPDATE user_summary SET total_balance = total_balance + ?, last_activity = CURRENT_TIMESTAMP WHERE user_id = ?";
+        String touched = "UPDATE user_summary SET last_activity = CURRENT_TIMESTAMP WHERE user_id = ? AND last_activity < ?";
+        Timestamp stale = new Timestamp(System.currentTimeMillis() - ACTIVITY_RESOLUTION_MS);
+        try (PreparedStatement psChanged = conn.prepareStatement(changed); PreparedStatement psTouched = conn.prepareStatement(touched)) {
+            for (Map.Entry<Long, Money> e : byUser.entrySet()) {
+                if (e.getValue().equals(Money.ZERO)) {
+                    psTouched.setLong(1, e.getKey());
+                    psTouched.setTimestamp(2, stale);
+                    psTouched.executeUpdate();
+                } else {
+                    psChanged.setBigDecimal(1, e.getValue().toBigDecimal());
+                    psChanged.setLong(2, e.getKey());
+                    psChanged.executeUpdate();
+                }
+            }
+        }
+    }
+
+    // Lock the summary rows of the accounts' owners, in user_id order, ahead of a transaction
+    // that writes them in some other order (GroupCommitCoordinator's epochs). Caller owns the
+    // transaction and already holds the account rows.
+    static void lockOwners(Connection conn, Iterable<String> accountNumbers) throws SQLException {
+        java.util.SortedSet<Long> owners = new java.util.TreeSet<>();
+        for (String an : accountNumbers) {
+            Long owner = owner(conn, an);
+            if (owner != null) owners.add(owner);
+        }
+        try (PreparedStatement ps = conn.prepareStatement("SELECT user_id FROM user_summary WHERE user_id = ? FOR UPDATE")) {
+            for (Long userId : owners) {
+                ps.setLong(1, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                }
+            }
+        }
+    }
+
+    // Owner of an account, null if it does not exist
+    private static Long owner(Connection conn, String accountNumber) throws SQLException {
+        Long owner = OWNERS.get(accountNumber);
+        if (owner != null) return owner;
+        try (PreparedStatement ps = conn.prepareStatement("SELECT user_id FROM accounts WHERE account_number = ?")) {
+            ps.setString(1, accountNumber);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                owner = rs.getLong(1);
+            }
+        }
+        cacheOwner(accountNumber, owner);
+        return owner;
+    }
+
+    private static void cacheOwner(String accountNumber, long userId) {
+        if (OWNERS.size() >= MAX_CACHED_OWNERS) OWNERS.clear();
+        OWNERS.put(accountNumber, userId);
+    }
+
+    @Override
+    public String toString() {
+        return "user " + userId + ": " + accountCount + " accounts, total " + totalBalance + ", last activity " + lastActivity;
+    }
+}